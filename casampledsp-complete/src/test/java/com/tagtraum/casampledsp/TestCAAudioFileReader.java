@@ -6,13 +6,24 @@
  */
 package com.tagtraum.casampledsp;
 
+import com.sun.net.httpserver.HttpServer;
 import org.junit.Test;
 
 import javax.sound.sampled.*;
 import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.*;
@@ -261,6 +272,167 @@ public class TestCAAudioFileReader {
         assertEquals("file:/someDir/%3B%3A%26%3D%2B%40%5B%5D%3F/name.txt", url.toString());
     }
 
+    @Test
+    public void testLiveAudioInputStreamMP3File() throws IOException, UnsupportedAudioFileException {
+        final String filename = "test.mp3";
+        final File file = File.createTempFile("testLiveAudioInputStreamMP3File", filename);
+        extractFile(filename, file);
+        int bytesRead = 0;
+        try (final AudioInputStream mp3Stream = new CAAudioFileReader().getLiveAudioInputStream(CAAudioFileReader.fileToURL(file), null)) {
+            assertEquals(AudioSystem.NOT_SPECIFIED, mp3Stream.getFrameLength());
+            assertEquals(44100f, mp3Stream.getFormat().getSampleRate(), 0.001f);
+            final AudioFormat targetFormat = new AudioFormat(AudioFormat.Encoding.PCM_SIGNED, 44100, 16, 2, 4, 44100, false);
+            try (final AudioInputStream pcmStream = AudioSystem.getAudioInputStream(targetFormat, mp3Stream)) {
+                int justRead;
+                final byte[] buf = new byte[1024];
+                while ((justRead = pcmStream.read(buf)) != -1) {
+                    bytesRead += justRead;
+                }
+            }
+        } finally {
+            file.delete();
+        }
+        assertEquals(537020, bytesRead, 3000);
+    }
+
+    @Test
+    public void testCachedFormatInvalidatedOnChange() throws IOException, UnsupportedAudioFileException {
+        final String filename = "test.mp3";
+        final File file = File.createTempFile("testCachedFormatInvalidatedOnChange", filename);
+        extractFile(filename, file);
+        try {
+            final CAAudioFileReader reader = new CAAudioFileReader();
+            final AudioFileFormat fileFormat = reader.getAudioFileFormat(file);
+            assertSame(fileFormat, reader.getAudioFileFormat(file));
+            final long invalidations = CAFormatCache.getDefault().getInvalidations();
+            assertTrue(file.setLastModified(file.lastModified() - 10000));
+            final AudioFileFormat changedFileFormat = reader.getAudioFileFormat(file);
+            assertNotSame(fileFormat, changedFileFormat);
+            assertEquals(invalidations + 1, CAFormatCache.getDefault().getInvalidations());
+            assertEquals(fileFormat.getFrameLength(), changedFileFormat.getFrameLength());
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testCachedRemoteFormat() throws IOException, UnsupportedAudioFileException, InterruptedException {
+        final byte[] data;
+        try (final InputStream in = getClass().getResourceAsStream("test.mp3")) {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            final byte[] buf = new byte[1024*64];
+            int justRead;
+            while ((justRead = in.read(buf)) != -1) {
+                out.write(buf, 0, justRead);
+            }
+            data = out.toByteArray();
+        }
+        final List<String> requests = Collections.synchronizedList(new ArrayList<>());
+        final HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", exchange -> {
+            requests.add(exchange.getRequestMethod());
+            exchange.getResponseHeaders().set("Content-Type", "audio/mpeg");
+            exchange.getResponseHeaders().set("ETag", "\"1\"");
+            if ("HEAD".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(200, -1);
+            } else {
+                exchange.sendResponseHeaders(200, data.length);
+                exchange.getResponseBody().write(data);
+            }
+            exchange.close();
+        });
+        server.start();
+        try {
+            final URL url = new URL("http://" + InetAddress.getLoopbackAddress().getHostAddress() + ":"
+                    + server.getAddress().getPort() + "/testCachedRemoteFormat.mp3");
+            final CAAudioFileReader reader = new CAAudioFileReader();
+            final AudioFileFormat fileFormat = reader.getAudioFileFormat(url);
+            assertEquals(Collections.singletonList("GET"), requests);
+            // fresh, no request at all
+            assertSame(fileFormat, reader.getAudioFileFormat(url));
+            assertEquals(1, requests.size());
+            // expired, revalidate with HEAD only
+            reader.setRemoteFormatMaxAge(0);
+            Thread.sleep(1);
+            assertSame(fileFormat, reader.getAudioFileFormat(url));
+            assertEquals(Arrays.asList("GET", "HEAD"), requests);
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    public void testScanAudioFileFormatMP3File() throws IOException, UnsupportedAudioFileException {
+        final String filename = "test.mp3";
+        final File file = File.createTempFile("testScanAudioFileFormatMP3File", filename);
+        extractFile(filename, file);
+        try {
+            final CAAudioFileReader reader = new CAAudioFileReader();
+            final AudioFileFormat probed = reader.getAudioFileFormat(file);
+            final AudioFileFormat fileFormat = reader.scanAudioFileFormat(file);
+            System.out.println(fileFormat);
+
+            assertEquals("mp3", fileFormat.getType().getExtension());
+            assertEquals(file.length(), fileFormat.getByteLength());
+            assertEquals(117, fileFormat.getFrameLength());
+            assertEquals(2, fileFormat.getFormat().getChannels());
+            final Long duration = (Long)fileFormat.getProperty("duration");
+            assertNotNull(duration);
+            // gapless info may exclude encoder delay and padding
+            assertEquals(3056326, (long)duration, 60000);
+            // the scanned length replaces the probed one, the probed properties are kept
+            assertEquals(probed.getFormat().getProperty("bitrate"), fileFormat.getFormat().getProperty("bitrate"));
+            assertEquals(probed.getFormat().getProperty("vbr"), fileFormat.getFormat().getProperty("vbr"));
+            assertSame(fileFormat, reader.getAudioFileFormat(file));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testScanAudioFileFormatInputStream() throws IOException, UnsupportedAudioFileException {
+        final String filename = "test.mp3";
+        final File file = File.createTempFile("testScanAudioFileFormatInputStream", filename);
+        extractFile(filename, file);
+        try (final InputStream in = new BufferedInputStream(new FileInputStream(file))) {
+            final AudioFileFormat fileFormat = new CAAudioFileReader().scanAudioFileFormat(in);
+            System.out.println(fileFormat);
+
+            assertEquals(AudioSystem.NOT_SPECIFIED, fileFormat.getByteLength());
+            assertEquals(117, fileFormat.getFrameLength());
+            final Long duration = (Long)fileFormat.getProperty("duration");
+            assertNotNull(duration);
+            assertEquals(3056326, (long)duration, 60000);
+            assertEquals(-1, in.read());
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testGetAudioFileFormats() throws IOException, InterruptedException, ExecutionException {
+        final String filename = "test.mp3";
+        final File file = File.createTempFile("testGetAudioFileFormats", filename);
+        final File missing = new File(file.getParentFile(), "missing-" + file.getName());
+        extractFile(filename, file);
+        try {
+            final Map<Path, CompletableFuture<AudioFileFormat>> futures = new CAAudioFileReader()
+                    .getAudioFileFormats(Arrays.asList(file.toPath(), missing.toPath()));
+            assertEquals(2, futures.size());
+            final AudioFileFormat fileFormat = futures.get(file.toPath()).get();
+            System.out.println(fileFormat);
+            assertEquals("mp3", fileFormat.getType().getExtension());
+            try {
+                futures.get(missing.toPath()).get();
+                fail("Expected ExecutionException");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof IOException);
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
     private void extractFile(final String filename, final File file) throws IOException {
         try (final InputStream in = getClass().getResourceAsStream(filename);
              final OutputStream out = new FileOutputStream(file)) {
@@ -69,6 +69,47 @@ public class TestCACodecInputStream {
         assertEquals(537020, bytesRead, 3000);
     }
 
+    @Test
+    public void testReadConvertMP3FileToPCMWithPrefetch() throws IOException, UnsupportedAudioFileException {
+        final String filename = "test.mp3";
+        final File file = File.createTempFile("testReadConvertMP3FileToPCMWithPrefetch", filename);
+        extractFile(filename, file);
+        int bytesRead = 0;
+        try (final AudioInputStream mp3Stream = new CAAudioFileReader().getAudioInputStream(file)) {
+            final AudioFormat targetFormat = new AudioFormat(CAAudioFormat.CAEncoding.PCM_SIGNED, 44100, 16, 2, 4, 44100, false);
+            try (final CACodecInputStream pcmStream = new CACodecInputStream(targetFormat, (CAAudioInputStream) mp3Stream, 16 * 1024)) {
+                pcmStream.enablePrefetch(3);
+                assertTrue(pcmStream.isPrefetching());
+                int justRead;
+                final byte[] buf = new byte[1024];
+                while ((justRead = pcmStream.read(buf)) != -1) {
+                    assertTrue(justRead > 0);
+                    assertTrue(pcmStream.available() >= 0);
+                    bytesRead += justRead;
+                }
+            }
+        } finally {
+            file.delete();
+        }
+        System.out.println("Read " + bytesRead + " bytes.");
+        assertEquals(537020, bytesRead, 3000);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testPrefetchCodecSource() throws IOException, UnsupportedAudioFileException {
+        final String filename = "test.mp3";
+        final File file = File.createTempFile("testPrefetchCodecSource", filename);
+        extractFile(filename, file);
+        try (final AudioInputStream mp3Stream = new CAAudioFileReader().getAudioInputStream(file)) {
+            final AudioFormat targetFormat = new AudioFormat(CAAudioFormat.CAEncoding.PCM_SIGNED, 44100, 16, 2, 4, 44100, false);
+            try (final CACodecInputStream ignored = new CACodecInputStream(targetFormat, (CAAudioInputStream) mp3Stream)) {
+                ((CAAudioInputStream) mp3Stream).getNativePeerInputStream().enablePrefetch(2);
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
     @Test
     public void testSeekForwards() throws IOException, UnsupportedAudioFileException {
         final String filename = "test.mp3";
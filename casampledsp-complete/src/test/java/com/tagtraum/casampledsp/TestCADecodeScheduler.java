@@ -0,0 +1,116 @@
+/*
+ * =================================================
+ * Copyright 2026 tagtraum industries incorporated
+ * All rights reserved.
+ * =================================================
+ */
+package com.tagtraum.casampledsp;
+
+import org.junit.Test;
+
+import javax.sound.sampled.UnsupportedAudioFileException;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+/**
+ * TestCADecodeScheduler.
+ *
+ * @author <a href="mailto:hs@tagtraum.com">Hendrik Schreiber</a>
+ */
+public class TestCADecodeScheduler {
+
+    private byte[] readResource(final String filename) throws IOException {
+        try (final InputStream in = getClass().getResourceAsStream(filename)) {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            final byte[] buf = new byte[1024*64];
+            int justRead;
+            while ((justRead = in.read(buf)) != -1) {
+                out.write(buf, 0, justRead);
+            }
+            return out.toByteArray();
+        }
+    }
+
+    @Test
+    public void testManySessions() throws IOException, UnsupportedAudioFileException, InterruptedException {
+        final byte[] mp3 = readResource("test.mp3");
+        final int sessionCount = 16;
+        final CountDownLatch ended = new CountDownLatch(sessionCount);
+        final AtomicLong[] decoded = new AtomicLong[sessionCount];
+        try (final CADecodeScheduler scheduler = new CADecodeScheduler(2, 4 * 1024)) {
+            final CADecodeScheduler.Session[] sessions = new CADecodeScheduler.Session[sessionCount];
+            for (int i=0; i<sessionCount; i++) {
+                final AtomicLong counter = decoded[i] = new AtomicLong();
+                sessions[i] = scheduler.open(0, new CADecodeScheduler.Consumer() {
+                    @Override
+                    public void decoded(final CADecodeScheduler.Session session, final ByteBuffer pcm) {
+                        counter.addAndGet(pcm.remaining());
+                    }
+
+                    @Override
+                    public void ended(final CADecodeScheduler.Session session) {
+                        ended.countDown();
+                    }
+
+                    @Override
+                    public void failed(final CADecodeScheduler.Session session, final Exception e) {
+                        e.printStackTrace();
+                    }
+                });
+            }
+            assertEquals(sessionCount, scheduler.getSessionCount());
+            // interleave input, like many slow network streams
+            final int chunkSize = 2000;
+            for (int offset=0; offset<mp3.length; offset+=chunkSize) {
+                for (final CADecodeScheduler.Session session : sessions) {
+                    session.push(ByteBuffer.wrap(mp3, offset, Math.min(chunkSize, mp3.length - offset)));
+                }
+            }
+            for (final CADecodeScheduler.Session session : sessions) {
+                session.endOfInput();
+            }
+            assertTrue(ended.await(60, TimeUnit.SECONDS));
+            assertEquals(0, scheduler.getSessionCount());
+            assertTrue(scheduler.getSlices() > 0);
+        }
+        for (final AtomicLong counter : decoded) {
+            assertEquals(537020, counter.get(), 3000);
+        }
+    }
+
+    @Test
+    public void testSuspend() throws IOException, UnsupportedAudioFileException, InterruptedException {
+        final byte[] mp3 = readResource("test.mp3");
+        final CountDownLatch ended = new CountDownLatch(1);
+        final AtomicLong decoded = new AtomicLong();
+        try (final CADecodeScheduler scheduler = new CADecodeScheduler(1, 4 * 1024)) {
+            final CADecodeScheduler.Session session = scheduler.open(0, new CADecodeScheduler.Consumer() {
+                @Override
+                public void decoded(final CADecodeScheduler.Session session, final ByteBuffer pcm) {
+                    decoded.addAndGet(pcm.remaining());
+                }
+
+                @Override
+                public void ended(final CADecodeScheduler.Session session) {
+                    ended.countDown();
+                }
+            });
+            session.suspend();
+            session.push(ByteBuffer.wrap(mp3));
+            session.endOfInput();
+            assertFalse(ended.await(500, TimeUnit.MILLISECONDS));
+            assertEquals(0, decoded.get());
+            session.resume();
+            assertTrue(ended.await(60, TimeUnit.SECONDS));
+            assertTrue(session.isClosed());
+        }
+        assertEquals(537020, decoded.get(), 3000);
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * =================================================
+ * Copyright 2026 tagtraum industries incorporated
+ * All rights reserved.
+ * =================================================
+ */
+package com.tagtraum.casampledsp;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+/**
+ * TestCADirectBufferPool.
+ *
+ * @author <a href="mailto:hs@tagtraum.com">Hendrik Schreiber</a>
+ */
+public class TestCADirectBufferPool {
+
+    @Test
+    public void testSizeClass() {
+        assertEquals(CADirectBufferPool.MIN_SIZE_CLASS, CADirectBufferPool.toSizeClass(0));
+        assertEquals(CADirectBufferPool.MIN_SIZE_CLASS, CADirectBufferPool.toSizeClass(17));
+        assertEquals(1024 * 1024, CADirectBufferPool.toSizeClass(1024 * 1024));
+        assertEquals(2 * 1024 * 1024, CADirectBufferPool.toSizeClass(1024 * 1024 + 1));
+    }
+
+    @Test
+    public void testAcquireRelease() {
+        final CADirectBufferPool pool = new CADirectBufferPool(1024 * 1024);
+        final ByteBuffer buffer = pool.acquire(10000);
+        assertTrue(buffer.isDirect());
+        assertEquals(16 * 1024, buffer.capacity());
+        assertEquals(0, pool.getHits());
+        assertEquals(1, pool.getMisses());
+
+        buffer.limit(0);
+        pool.release(buffer);
+        assertEquals(16 * 1024, pool.getPooledBytes());
+
+        final ByteBuffer reused = pool.acquire(16 * 1024);
+        assertSame(buffer, reused);
+        assertEquals(16 * 1024, reused.remaining());
+        assertEquals(1, pool.getHits());
+        assertEquals(0, pool.getPooledBytes());
+    }
+
+    @Test
+    public void testMaxPooledBytes() {
+        final CADirectBufferPool pool = new CADirectBufferPool(8 * 1024);
+        final ByteBuffer first = pool.acquire(8 * 1024);
+        final ByteBuffer second = pool.acquire(8 * 1024);
+        pool.release(first);
+        pool.release(second);
+        assertEquals(8 * 1024, pool.getPooledBytes());
+        assertEquals(1, pool.getDiscarded());
+
+        pool.clear();
+        assertEquals(0, pool.getPooledBytes());
+    }
+
+    @Test
+    public void testForeignBuffersAreDropped() {
+        final CADirectBufferPool pool = new CADirectBufferPool(1024 * 1024);
+        pool.release(ByteBuffer.allocateDirect(5000));
+        pool.release(ByteBuffer.allocate(8 * 1024));
+        assertEquals(0, pool.getPooledBytes());
+    }
+}
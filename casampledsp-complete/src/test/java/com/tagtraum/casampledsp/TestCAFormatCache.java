@@ -0,0 +1,115 @@
+/*
+ * =================================================
+ * Copyright 2026 tagtraum industries incorporated
+ * All rights reserved.
+ * =================================================
+ */
+package com.tagtraum.casampledsp;
+
+import org.junit.Test;
+
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * TestCAFormatCache.
+ *
+ * @author <a href="mailto:hs@tagtraum.com">Hendrik Schreiber</a>
+ */
+public class TestCAFormatCache {
+
+    private static AudioFileFormat createFormat() {
+        return new AudioFileFormat(AudioFileFormat.Type.WAVE,
+                new AudioFormat(44100f, 16, 2, true, false), AudioSystem.NOT_SPECIFIED);
+    }
+
+    @Test
+    public void testHitAndMiss() {
+        final CAFormatCache cache = new CAFormatCache(10);
+        final AudioFileFormat format = createFormat();
+        assertNull(cache.get("a", "1/1"));
+        cache.put("a", "1/1", format);
+        assertSame(format, cache.get("a", "1/1"));
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        assertEquals(0.5, cache.getHitRate(), 0.0001);
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testInvalidation() {
+        final CAFormatCache cache = new CAFormatCache(10);
+        cache.put("a", "1/1", createFormat());
+        // file changed
+        assertNull(cache.get("a", "2/1"));
+        assertEquals(1, cache.getInvalidations());
+        assertEquals(0, cache.size());
+        // resources without validator are always valid
+        final AudioFileFormat format = createFormat();
+        cache.put("b", null, format);
+        assertSame(format, cache.get("b", null));
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEviction() {
+        final CAFormatCache cache = new CAFormatCache(3);
+        assertEquals(3, cache.getCapacity());
+        cache.put("a", null, createFormat());
+        cache.put("b", null, createFormat());
+        cache.put("c", null, createFormat());
+        // touch a, so that b is the least recently used
+        assertNotNull(cache.get("a", null));
+        cache.put("d", null, createFormat());
+        assertEquals(1, cache.getEvictions());
+        assertNull(cache.get("b", null));
+        assertNotNull(cache.get("a", null));
+        assertNotNull(cache.get("c", null));
+        assertNotNull(cache.get("d", null));
+    }
+
+    @Test
+    public void testSetCapacity() {
+        final CAFormatCache cache = new CAFormatCache(10);
+        for (int i=0; i<10; i++) {
+            cache.put("" + i, null, createFormat());
+        }
+        cache.setCapacity(4);
+        assertEquals(4, cache.size());
+        assertEquals(6, cache.getEvictions());
+        // the most recently added entries survive
+        assertNotNull(cache.get("9", null));
+        assertNull(cache.get("0", null));
+    }
+
+    @Test
+    public void testSegmentedCapacity() {
+        final CAFormatCache cache = new CAFormatCache(10000);
+        assertTrue(cache.getCapacity() >= 10000);
+        for (int i=0; i<20000; i++) {
+            cache.put("file:/music/" + i + ".mp3", null, createFormat());
+        }
+        assertTrue(cache.size() <= cache.getCapacity());
+        assertEquals(20000 - cache.size(), cache.getEvictions());
+    }
+
+    @Test
+    public void testGetIfFresh() {
+        final CAFormatCache cache = new CAFormatCache(10);
+        final AudioFileFormat format = createFormat();
+        assertFalse(cache.contains("a"));
+        assertNull(cache.getIfFresh("a", 1, TimeUnit.MINUTES));
+        cache.put("a", "1/1", format);
+        assertTrue(cache.contains("a"));
+        // the validator is not checked, as long as the entry is fresh
+        assertSame(format, cache.getIfFresh("a", 1, TimeUnit.MINUTES));
+        assertEquals(1, cache.getHits());
+        assertEquals(0, cache.getMisses());
+        assertNull(cache.getIfFresh("a", -1, TimeUnit.MINUTES));
+        assertTrue(cache.contains("a"));
+        assertEquals(0, cache.getMisses());
+    }
+}
@@ -0,0 +1,197 @@
+/*
+ * =================================================
+ * Copyright 2026 tagtraum industries incorporated
+ * All rights reserved.
+ * =================================================
+ */
+package com.tagtraum.casampledsp;
+
+import org.junit.Test;
+
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.UnsupportedAudioFileException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.Assert.*;
+
+/**
+ * TestCAFormatIndex.
+ *
+ * @author <a href="mailto:hs@tagtraum.com">Hendrik Schreiber</a>
+ */
+public class TestCAFormatIndex {
+
+    private static final String URL = "file:/music/test.mp3";
+    private static final int MP3 = CAAudioFormat.CAEncoding.MP3.getDataFormat();
+
+    private static AudioFileFormat createFormat(final int frameLength) throws UnsupportedAudioFileException {
+        return new CAAudioFileFormat(URL, MP3, 44100f, -1, 2, -1, 38.28125f, frameLength, false, 3056326L, 128000, true);
+    }
+
+    private static void delete(final Path path) throws IOException {
+        Files.deleteIfExists(path);
+        Files.deleteIfExists(path.resolveSibling(path.getFileName() + ".lock"));
+    }
+
+    @Test
+    public void testPersistence() throws IOException, UnsupportedAudioFileException {
+        final Path path = Files.createTempFile("testPersistence", ".index");
+        try {
+            try (final CAFormatIndex index = CAFormatIndex.open(path)) {
+                assertNull(index.get(URL, "1/1"));
+                index.put(URL, "1/1", createFormat(117));
+                assertEquals(1, index.size());
+            }
+            try (final CAFormatIndex index = CAFormatIndex.open(path)) {
+                final AudioFileFormat fileFormat = index.get(URL, "1/1");
+                assertNotNull(fileFormat);
+                assertEquals("mp3", fileFormat.getType().getExtension());
+                assertEquals(117, fileFormat.getFrameLength());
+                assertEquals(3056326L, fileFormat.getProperty("duration"));
+                final AudioFormat format = fileFormat.getFormat();
+                assertEquals(CAAudioFormat.CAEncoding.MP3, format.getEncoding());
+                assertEquals(44100f, format.getSampleRate(), 0.001f);
+                assertEquals(38.28125f, format.getFrameRate(), 0.001f);
+                assertEquals(2, format.getChannels());
+                assertEquals(128000, format.getProperty("bitrate"));
+                assertEquals(true, format.getProperty("vbr"));
+                // file changed
+                assertNull(index.get(URL, "2/1"));
+            }
+        } finally {
+            delete(path);
+        }
+    }
+
+    @Test
+    public void testIncompleteRecord() throws IOException, UnsupportedAudioFileException {
+        final Path path = Files.createTempFile("testIncompleteRecord", ".index");
+        try {
+            try (final CAFormatIndex index = CAFormatIndex.open(path)) {
+                index.put(URL, "1/1", createFormat(117));
+            }
+            final long size = Files.size(path);
+            // simulate a crash while appending a record
+            Files.write(path, new byte[] {0, 0, 0, 100, 1, 2, 3}, StandardOpenOption.APPEND);
+            try (final CAFormatIndex index = CAFormatIndex.open(path)) {
+                assertNotNull(index.get(URL, "1/1"));
+                assertEquals(size, Files.size(path));
+            }
+        } finally {
+            delete(path);
+        }
+    }
+
+    @Test
+    public void testCompaction() throws IOException, UnsupportedAudioFileException {
+        final Path path = Files.createTempFile("testCompaction", ".index");
+        try {
+            try (final CAFormatIndex index = CAFormatIndex.open(path)) {
+                for (int i=0; i<2000; i++) {
+                    index.put(URL, "1/" + i, createFormat(117));
+                }
+                // an unchanged format is not appended again
+                final long size = Files.size(path);
+                index.put(URL, "1/1999", createFormat(117));
+                assertEquals(size, Files.size(path));
+            }
+            final long size = Files.size(path);
+            try (final CAFormatIndex index = CAFormatIndex.open(path)) {
+                assertTrue(Files.size(path) < size / 100);
+                assertNotNull(index.get(URL, "1/1999"));
+                assertNull(index.get(URL, "1/1998"));
+                index.put(URL, "1/2000", createFormat(117));
+            }
+            try (final CAFormatIndex index = CAFormatIndex.open(path)) {
+                assertNotNull(index.get(URL, "1/2000"));
+            }
+        } finally {
+            delete(path);
+        }
+    }
+
+    @Test
+    public void testFailedCompaction() throws IOException, UnsupportedAudioFileException {
+        final Path path = Files.createTempFile("testFailedCompaction", ".index");
+        // a directory in the way of the compacted file
+        final Path blocker = path.resolveSibling(path.getFileName() + ".tmp");
+        final Path blockerContent = Files.createFile(Files.createDirectory(blocker).resolve("content"));
+        try {
+            try (final CAFormatIndex index = CAFormatIndex.open(path)) {
+                index.put(URL, "1/1", createFormat(117));
+                try {
+                    index.compact();
+                    fail("Expected IOException");
+                } catch (IOException e) {
+                    // expected
+                }
+                // the index is still usable
+                index.put(URL, "1/2", createFormat(117));
+            }
+            try (final CAFormatIndex index = CAFormatIndex.open(path)) {
+                assertNotNull(index.get(URL, "1/2"));
+            }
+        } finally {
+            Files.deleteIfExists(blockerContent);
+            Files.deleteIfExists(blocker);
+            delete(path);
+        }
+    }
+
+    @Test
+    public void testSharedFile() throws IOException, UnsupportedAudioFileException {
+        final Path path = Files.createTempFile("testSharedFile", ".index");
+        try {
+            try (final CAFormatIndex first = CAFormatIndex.open(path);
+                 final CAFormatIndex second = CAFormatIndex.open(path)) {
+                first.put(URL, "1/1", createFormat(117));
+                second.put("file:/music/other.mp3", "1/1", createFormat(117));
+                first.put(URL, "1/2", createFormat(117));
+            }
+            try (final CAFormatIndex index = CAFormatIndex.open(path)) {
+                assertEquals(2, index.size());
+                assertNotNull(index.get(URL, "1/2"));
+                assertNotNull(index.get("file:/music/other.mp3", "1/1"));
+            }
+        } finally {
+            delete(path);
+        }
+    }
+
+    @Test
+    public void testSharedFileCompaction() throws IOException, UnsupportedAudioFileException {
+        final Path path = Files.createTempFile("testSharedFileCompaction", ".index");
+        try {
+            try (final CAFormatIndex first = CAFormatIndex.open(path);
+                 final CAFormatIndex second = CAFormatIndex.open(path)) {
+                first.put(URL, "1/1", createFormat(117));
+                // keeps the record the first index appended after the second was opened
+                second.compact();
+                // appends to the compacted file, not the replaced one
+                first.put("file:/music/other.mp3", "1/1", createFormat(117));
+            }
+            try (final CAFormatIndex index = CAFormatIndex.open(path)) {
+                assertEquals(2, index.size());
+                assertNotNull(index.get(URL, "1/1"));
+                assertNotNull(index.get("file:/music/other.mp3", "1/1"));
+            }
+        } finally {
+            delete(path);
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testNotAnIndex() throws IOException {
+        final Path path = Files.createTempFile("testNotAnIndex", ".index");
+        try {
+            Files.write(path, new byte[] {1, 2, 3, 4, 5, 6, 7, 8});
+            CAFormatIndex.open(path);
+        } finally {
+            delete(path);
+        }
+    }
+}
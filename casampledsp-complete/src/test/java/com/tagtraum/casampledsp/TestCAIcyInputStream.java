@@ -0,0 +1,75 @@
+/*
+ * =================================================
+ * Copyright 2026 tagtraum industries incorporated
+ * All rights reserved.
+ * =================================================
+ */
+package com.tagtraum.casampledsp;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * TestCAIcyInputStream.
+ *
+ * @author <a href="mailto:hs@tagtraum.com">Hendrik Schreiber</a>
+ */
+public class TestCAIcyInputStream {
+
+    private static void writeMetadata(final ByteArrayOutputStream out, final String metadata) {
+        final byte[] bytes = metadata.getBytes(StandardCharsets.UTF_8);
+        final int blocks = (bytes.length + 15) / 16;
+        out.write(blocks);
+        out.write(bytes, 0, bytes.length);
+        for (int i=bytes.length; i<blocks*16; i++) {
+            out.write(0);
+        }
+    }
+
+    @Test
+    public void testStripMetadata() throws IOException {
+        final int metaInt = 100;
+        final byte[] audio = new byte[1000];
+        for (int i=0; i<audio.length; i++) {
+            audio[i] = (byte)i;
+        }
+        final String[] metadata = {"StreamTitle='First - Song';StreamUrl='';", "", "StreamTitle='First - Song';",
+            "StreamTitle='Second - It's here';", "", "", "", "", "", ""};
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int i=0; i<audio.length/metaInt; i++) {
+            out.write(audio, i*metaInt, metaInt);
+            writeMetadata(out, metadata[i]);
+        }
+
+        final List<String> titles = new ArrayList<>();
+        final ByteArrayOutputStream stripped = new ByteArrayOutputStream();
+        try (final CAIcyInputStream in = new CAIcyInputStream(new ByteArrayInputStream(out.toByteArray()), metaInt,
+                (title, fields) -> titles.add(title))) {
+            // mix single byte and bulk reads
+            stripped.write(in.read());
+            final byte[] buf = new byte[37];
+            int justRead;
+            while ((justRead = in.read(buf)) != -1) {
+                stripped.write(buf, 0, justRead);
+            }
+            assertEquals("Second - It's here", in.getStreamTitle());
+            assertTrue(in.getMetadata().containsKey("StreamTitle"));
+        }
+        assertArrayEquals(audio, stripped.toByteArray());
+        assertEquals(2, titles.size());
+        assertEquals("First - Song", titles.get(0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidMetaInt() {
+        new CAIcyInputStream(new ByteArrayInputStream(new byte[0]), 0, null);
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * =================================================
+ * Copyright 2026 tagtraum industries incorporated
+ * All rights reserved.
+ * =================================================
+ */
+package com.tagtraum.casampledsp;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * TestCANativePeerBudget.
+ *
+ * @author <a href="mailto:hs@tagtraum.com">Hendrik Schreiber</a>
+ */
+public class TestCANativePeerBudget {
+
+    @Test
+    public void testMaxOpenPeers() throws IOException {
+        final CANativePeerBudget budget = new CANativePeerBudget(2, 0, 0);
+        final CANativePeerBudget.Permit first = budget.acquire(1000);
+        final CANativePeerBudget.Permit second = budget.acquire(1000);
+        assertEquals(2, budget.getOpenPeers());
+        assertEquals(2000, budget.getReservedBytes());
+        try {
+            budget.acquire(1000);
+            fail("Expected IOException");
+        } catch (IOException e) {
+            // expected
+        }
+        assertEquals(1, budget.getRejected());
+
+        first.release();
+        first.release();
+        assertEquals(1, budget.getOpenPeers());
+        budget.acquire(1000).release();
+        second.release();
+        assertEquals(0, budget.getOpenPeers());
+        assertEquals(0, budget.getReservedBytes());
+    }
+
+    @Test
+    public void testMaxBytes() throws IOException {
+        final CANativePeerBudget budget = new CANativePeerBudget(0, 1000, 0);
+        // a single peer is always admitted
+        final CANativePeerBudget.Permit big = budget.acquire(5000);
+        try {
+            budget.acquire(1);
+            fail("Expected IOException");
+        } catch (IOException e) {
+            // expected
+        }
+        big.release();
+        final CANativePeerBudget.Permit small = budget.acquire(500);
+        budget.acquire(500).release();
+        small.release();
+        assertEquals(0, budget.getReservedBytes());
+    }
+
+    @Test
+    public void testWaitForRelease() throws Exception {
+        final CANativePeerBudget budget = new CANativePeerBudget(1, 0, TimeUnit.SECONDS.toMillis(10));
+        final CANativePeerBudget.Permit first = budget.acquire(1000);
+        final CountDownLatch admitted = new CountDownLatch(1);
+        final Thread thread = new Thread(() -> {
+            try {
+                budget.acquire(1000).release();
+                admitted.countDown();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        });
+        thread.start();
+        assertFalse(admitted.await(100, TimeUnit.MILLISECONDS));
+        first.release();
+        assertTrue(admitted.await(5, TimeUnit.SECONDS));
+        thread.join();
+        assertEquals(0, budget.getRejected());
+    }
+}
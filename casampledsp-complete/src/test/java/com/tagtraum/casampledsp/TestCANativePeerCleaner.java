@@ -0,0 +1,78 @@
+/*
+ * =================================================
+ * Copyright 2026 tagtraum industries incorporated
+ * All rights reserved.
+ * =================================================
+ */
+package com.tagtraum.casampledsp;
+
+import org.junit.Test;
+
+import javax.sound.sampled.UnsupportedAudioFileException;
+import java.io.*;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * TestCANativePeerCleaner.
+ *
+ * @author <a href="mailto:hs@tagtraum.com">Hendrik Schreiber</a>
+ */
+public class TestCANativePeerCleaner {
+
+    @Test
+    public void testCloseReleasesNativePeer() throws IOException, UnsupportedAudioFileException {
+        final String filename = "test.wav";
+        final File file = File.createTempFile("testCloseReleasesNativePeer", filename);
+        extractFile(filename, file);
+        try {
+            final int openCount = CANativePeerCleaner.getOpenCount();
+            final CAURLInputStream in = new CAURLInputStream(file.toURI().toURL());
+            assertEquals(openCount + 1, CANativePeerCleaner.getOpenCount());
+            in.close();
+            assertEquals(openCount, CANativePeerCleaner.getOpenCount());
+            // closing twice does no harm
+            in.close();
+            assertEquals(openCount, CANativePeerCleaner.getOpenCount());
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testLeakedStreamIsReleased() throws IOException, UnsupportedAudioFileException, InterruptedException {
+        final String filename = "test.wav";
+        final File file = File.createTempFile("testLeakedStreamIsReleased", filename);
+        extractFile(filename, file);
+        final boolean leakDetection = CANativePeerCleaner.isLeakDetection();
+        try {
+            CANativePeerCleaner.setLeakDetection(true);
+            final long leakCount = CANativePeerCleaner.getLeakCount();
+            openAndForget(file);
+            for (int i=0; i<50 && CANativePeerCleaner.getLeakCount() == leakCount; i++) {
+                System.gc();
+                Thread.sleep(100);
+            }
+            assertTrue(CANativePeerCleaner.getLeakCount() > leakCount);
+        } finally {
+            CANativePeerCleaner.setLeakDetection(leakDetection);
+            file.delete();
+        }
+    }
+
+    private static void openAndForget(final File file) throws IOException, UnsupportedAudioFileException {
+        new CAURLInputStream(file.toURI().toURL()).read();
+    }
+
+    private void extractFile(final String filename, final File file) throws IOException {
+        try (final InputStream in = getClass().getResourceAsStream(filename);
+             final OutputStream out = new FileOutputStream(file)) {
+            final byte[] buf = new byte[1024*64];
+            int justRead;
+            while ((justRead = in.read(buf)) != -1) {
+                out.write(buf, 0, justRead);
+            }
+        }
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * =================================================
+ * Copyright 2026 tagtraum industries incorporated
+ * All rights reserved.
+ * =================================================
+ */
+package com.tagtraum.casampledsp;
+
+import org.junit.Test;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * TestCANativePeerInputStream.
+ *
+ * @author <a href="mailto:hs@tagtraum.com">Hendrik Schreiber</a>
+ */
+public class TestCANativePeerInputStream {
+
+    @Test
+    public void testBufferSizePCM() {
+        // 192kHz, 24 bit, stereo -> 1152000 bytes/s
+        final AudioFormat format = new AudioFormat(AudioFormat.Encoding.PCM_SIGNED, 192000, 24, 2, 6, 192000, false);
+        assertEquals(288000, CANativePeerInputStream.getBufferSize(format, 250));
+        assertEquals(1152000, CANativePeerInputStream.getBufferSize(format, 1000));
+    }
+
+    @Test
+    public void testBufferSizeLowBitRate() {
+        // 64 kbps CBR AAC -> 8000 bytes/s, way below the minimum
+        final AudioFormat format = new CAAudioFormat(CAAudioFormat.CAEncoding.MPEG4_AAC.getDataFormat(),
+            44100, AudioSystem.NOT_SPECIFIED, 2, AudioSystem.NOT_SPECIFIED, 44100f/1024, false, 64000, false);
+        assertEquals(CANativePeerInputStream.MIN_BUFFER_SIZE, CANativePeerInputStream.getBufferSize(format, 250));
+    }
+
+    @Test
+    public void testBufferSizeVBR() {
+        // 256 kbps VBR -> 64000 bytes/s with headroom
+        final AudioFormat format = new CAAudioFormat(CAAudioFormat.CAEncoding.MP3.getDataFormat(),
+            44100, AudioSystem.NOT_SPECIFIED, 2, AudioSystem.NOT_SPECIFIED, 44100f/1152, false, 256000, true);
+        assertEquals(64000, CANativePeerInputStream.getBufferSize(format, 1000));
+    }
+
+    @Test
+    public void testBufferSizeUnknownRate() {
+        final AudioFormat format = new AudioFormat(AudioFormat.Encoding.PCM_SIGNED, AudioSystem.NOT_SPECIFIED, 16,
+            AudioSystem.NOT_SPECIFIED, AudioSystem.NOT_SPECIFIED, AudioSystem.NOT_SPECIFIED, false);
+        assertEquals(CANativePeerInputStream.DEFAULT_BUFFER_SIZE, CANativePeerInputStream.getBufferSize(format, 250));
+        assertEquals(CANativePeerInputStream.DEFAULT_BUFFER_SIZE, CANativePeerInputStream.getBufferSize(null, 250));
+    }
+
+    @Test
+    public void testBufferSizeMax() {
+        final AudioFormat format = new AudioFormat(AudioFormat.Encoding.PCM_SIGNED, 192000, 32, 8, 32, 192000, false);
+        assertEquals(CANativePeerInputStream.MAX_BUFFER_SIZE, CANativePeerInputStream.getBufferSize(format, 10000));
+    }
+}
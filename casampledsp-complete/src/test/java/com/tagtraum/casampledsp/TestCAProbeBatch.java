@@ -0,0 +1,171 @@
+/*
+ * =================================================
+ * Copyright 2026 tagtraum industries incorporated
+ * All rights reserved.
+ * =================================================
+ */
+package com.tagtraum.casampledsp;
+
+import org.junit.Test;
+
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+/**
+ * TestCAProbeBatch.
+ *
+ * @author <a href="mailto:hs@tagtraum.com">Hendrik Schreiber</a>
+ */
+public class TestCAProbeBatch {
+
+    private static final AudioFileFormat FORMAT = new AudioFileFormat(AudioFileFormat.Type.WAVE,
+            new AudioFormat(44100f, 16, 2, true, false), AudioSystem.NOT_SPECIFIED);
+
+    private static List<Path> createFiles(final Path directory, final int count) throws IOException {
+        final List<Path> files = new ArrayList<>();
+        for (int i=0; i<count; i++) {
+            files.add(Files.createFile(directory.resolve("file" + i + ".wav")));
+        }
+        return files;
+    }
+
+    private static void delete(final Path directory) throws IOException {
+        try (final Stream<Path> files = Files.list(directory)) {
+            for (final Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    @Test
+    public void testOrder() throws IOException {
+        final Path dirA = Files.createTempDirectory("testOrderA");
+        final Path dirB = Files.createTempDirectory("testOrderB");
+        try {
+            final List<Path> files = new ArrayList<>();
+            files.addAll(createFiles(dirA, 50));
+            files.addAll(createFiles(dirB, 50));
+            Collections.shuffle(files);
+            final List<Path> probed = Collections.synchronizedList(new ArrayList<>());
+            final Map<Path, CompletableFuture<AudioFileFormat>> futures = CAProbeBatch.submit(files, path -> {
+                probed.add(path);
+                return FORMAT;
+            }, Runnable::run);
+            // results are in the order of the request
+            assertEquals(files, new ArrayList<>(futures.keySet()));
+            assertEquals(100, probed.size());
+            // directories are probed one after the other, each in inode order
+            final Path firstDirectory = probed.get(0).getParent();
+            for (int i=0; i<probed.size(); i++) {
+                assertEquals(i < 50 ? firstDirectory : (firstDirectory.equals(dirA) ? dirB : dirA), probed.get(i).getParent());
+                if (i % 50 > 0) {
+                    assertTrue(CAProbeBatch.inode(probed.get(i - 1)) <= CAProbeBatch.inode(probed.get(i)));
+                }
+            }
+            for (final CompletableFuture<AudioFileFormat> future : futures.values()) {
+                assertSame(FORMAT, future.getNow(null));
+            }
+        } finally {
+            delete(dirA);
+            delete(dirB);
+        }
+    }
+
+    @Test
+    public void testChunkOrder() throws IOException, InterruptedException, ExecutionException {
+        final Path directory = Files.createTempDirectory("testChunkOrder");
+        // chunks are submitted from the pool's own thread, which must not run them LIFO
+        final ForkJoinPool executor = CAProbeBatch.newExecutor(1);
+        try {
+            final List<Path> files = createFiles(directory, 4 * CAProbeBatch.CHUNK_SIZE);
+            Collections.shuffle(files);
+            final List<Path> probed = Collections.synchronizedList(new ArrayList<>());
+            final Map<Path, CompletableFuture<AudioFileFormat>> futures = CAProbeBatch.submit(files, path -> {
+                probed.add(path);
+                return FORMAT;
+            }, executor);
+            for (final CompletableFuture<AudioFileFormat> future : futures.values()) {
+                assertSame(FORMAT, future.get());
+            }
+            assertEquals(files.size(), probed.size());
+            for (int i=1; i<probed.size(); i++) {
+                assertTrue(CAProbeBatch.inode(probed.get(i - 1)) <= CAProbeBatch.inode(probed.get(i)));
+            }
+        } finally {
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+            delete(directory);
+        }
+    }
+
+    @Test
+    public void testFailuresDoNotAbortBatch() throws IOException, InterruptedException, ExecutionException {
+        final Path directory = Files.createTempDirectory("testFailuresDoNotAbortBatch");
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final List<Path> files = new ArrayList<>(createFiles(directory, 100));
+            final Path missing = directory.resolve("missing.wav");
+            files.add(10, missing);
+            // duplicates are probed once
+            files.add(files.get(0));
+            final Map<Path, CompletableFuture<AudioFileFormat>> futures = CAProbeBatch.submit(files, path -> {
+                if (!Files.exists(path)) throw new FileNotFoundException(path.toString());
+                return FORMAT;
+            }, executor);
+            assertEquals(101, futures.size());
+            try {
+                futures.get(missing).get();
+                fail("Expected ExecutionException");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof FileNotFoundException);
+            }
+            for (final Map.Entry<Path, CompletableFuture<AudioFileFormat>> entry : futures.entrySet()) {
+                if (!entry.getKey().equals(missing)) {
+                    assertSame(FORMAT, entry.getValue().get());
+                }
+            }
+        } finally {
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+            delete(directory);
+        }
+    }
+
+    @Test
+    public void testRejected() throws InterruptedException {
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        executor.shutdown();
+        final Map<Path, CompletableFuture<AudioFileFormat>> futures = CAProbeBatch.submit(
+                Arrays.asList(Paths.get("a.wav"), Paths.get("b.wav")), path -> FORMAT, executor);
+        for (final CompletableFuture<AudioFileFormat> future : futures.values()) {
+            try {
+                future.get();
+                fail("Expected ExecutionException");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof RejectedExecutionException);
+            }
+        }
+    }
+}
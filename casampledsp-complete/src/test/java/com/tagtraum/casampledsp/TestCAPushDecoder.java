@@ -0,0 +1,78 @@
+/*
+ * =================================================
+ * Copyright 2026 tagtraum industries incorporated
+ * All rights reserved.
+ * =================================================
+ */
+package com.tagtraum.casampledsp;
+
+import org.junit.Test;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.UnsupportedAudioFileException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+/**
+ * TestCAPushDecoder.
+ *
+ * @author <a href="mailto:hs@tagtraum.com">Hendrik Schreiber</a>
+ */
+public class TestCAPushDecoder {
+
+    @Test
+    public void testDecodeMP3InSmallChunks() throws IOException, UnsupportedAudioFileException {
+        int bytesDecoded = 0;
+        try (final InputStream in = getClass().getResourceAsStream("test.mp3");
+             final CAPushDecoder decoder = new CAPushDecoder(0)) {
+            final ByteBuffer pcm = ByteBuffer.allocateDirect(4 * 1024);
+            // nothing pushed yet
+            assertEquals(0, decoder.decode(pcm));
+            assertNull(decoder.getFormat());
+
+            final byte[] buf = new byte[1000];
+            int justRead;
+            while ((justRead = in.read(buf)) != -1) {
+                decoder.push(ByteBuffer.wrap(buf, 0, justRead));
+                int decoded;
+                while ((decoded = decoder.decode(pcm)) > 0) {
+                    bytesDecoded += decoded;
+                    pcm.clear();
+                }
+                assertEquals(0, decoded);
+            }
+            decoder.endOfInput();
+            int decoded;
+            while ((decoded = decoder.decode(pcm)) != -1) {
+                bytesDecoded += decoded;
+                pcm.clear();
+            }
+            assertEquals(0, decoder.getQueuedBytes());
+            final AudioFormat format = decoder.getFormat();
+            assertEquals(44100f, format.getSampleRate(), 0.01f);
+            assertEquals(2, format.getChannels());
+            assertEquals(16, format.getSampleSizeInBits());
+            assertFalse(format.isBigEndian());
+        }
+        System.out.println("Decoded " + bytesDecoded + " bytes.");
+        assertEquals(537020, bytesDecoded, 3000);
+    }
+
+    @Test(expected = IOException.class)
+    public void testPushAfterEndOfInput() throws IOException, UnsupportedAudioFileException {
+        try (final CAPushDecoder decoder = new CAPushDecoder(0)) {
+            decoder.endOfInput();
+            decoder.push(ByteBuffer.wrap(new byte[10]));
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testDecodeAfterClose() throws IOException, UnsupportedAudioFileException {
+        final CAPushDecoder decoder = new CAPushDecoder(0);
+        decoder.close();
+        decoder.decode(ByteBuffer.allocate(10));
+    }
+}
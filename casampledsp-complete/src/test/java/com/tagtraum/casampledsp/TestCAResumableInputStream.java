@@ -0,0 +1,184 @@
+/*
+ * =================================================
+ * Copyright 2026 tagtraum industries incorporated
+ * All rights reserved.
+ * =================================================
+ */
+package com.tagtraum.casampledsp;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.*;
+
+/**
+ * TestCAResumableInputStream.
+ *
+ * @author <a href="mailto:hs@tagtraum.com">Hendrik Schreiber</a>
+ */
+public class TestCAResumableInputStream {
+
+    private static final Pattern RANGE = Pattern.compile("bytes=(\\d+)-");
+
+    private static byte[] readFully(final InputStream in) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final byte[] buf = new byte[4096];
+        int justRead;
+        while ((justRead = in.read(buf)) != -1) {
+            out.write(buf, 0, justRead);
+        }
+        return out.toByteArray();
+    }
+
+    @Test
+    public void testReadWithoutDrops() throws IOException {
+        try (final DroppingServer server = new DroppingServer();
+             final CAResumableInputStream in = new CAResumableInputStream(server.getURL(), 1000, 1000, 3)) {
+            assertEquals("audio/mpeg", in.getContentType());
+            assertEquals(server.data.length, in.getLength());
+            assertArrayEquals(server.data, readFully(in));
+            assertEquals(0, in.getResumes());
+            assertEquals(server.data.length, in.getPosition());
+        }
+    }
+
+    @Test
+    public void testResumeAfterDrops() throws IOException {
+        try (final DroppingServer server = new DroppingServer()) {
+            server.dropAfter = 30000;
+            try (final CAResumableInputStream in = new CAResumableInputStream(server.getURL(), 1000, 1000, 3)) {
+                assertArrayEquals(server.data, readFully(in));
+                assertEquals(3, in.getResumes());
+            }
+            assertEquals(4, server.requests.get());
+        }
+    }
+
+    @Test
+    public void testResumeAfterFailedReconnect() throws IOException {
+        try (final DroppingServer server = new DroppingServer()) {
+            server.dropAfter = 60000;
+            try (final CAResumableInputStream in = new CAResumableInputStream(server.getURL(), 1000, 1000, 3)) {
+                final byte[] buf = new byte[1000];
+                assertEquals(1000, in.read(buf));
+                server.failures.set(2);
+                final byte[] rest = readFully(in);
+                assertEquals(server.data.length - 1000, rest.length);
+                assertEquals(server.data[server.data.length - 1], rest[rest.length - 1]);
+                assertEquals(1, in.getResumes());
+            }
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testRetriesExhausted() throws IOException {
+        try (final DroppingServer server = new DroppingServer()) {
+            server.dropAfter = 60000;
+            try (final CAResumableInputStream in = new CAResumableInputStream(server.getURL(), 1000, 1000, 2)) {
+                final byte[] buf = new byte[1000];
+                assertEquals(1000, in.read(buf));
+                server.failures.set(10);
+                readFully(in);
+            }
+        }
+    }
+
+    @Test
+    public void testChangedResource() throws IOException {
+        try (final DroppingServer server = new DroppingServer()) {
+            server.dropAfter = 60000;
+            try (final CAResumableInputStream in = new CAResumableInputStream(server.getURL(), 1000, 1000, 3)) {
+                final byte[] buf = new byte[1000];
+                assertEquals(1000, in.read(buf));
+                server.eTag = "\"v2\"";
+                readFully(in);
+                fail("Expected IOException, because the resource changed");
+            } catch (IOException e) {
+                assertTrue(e.getMessage(), e.getMessage().contains("changed"));
+            }
+        }
+    }
+
+    /**
+     * Local HTTP server that supports ranges and drops connections on demand.
+     */
+    private static class DroppingServer implements AutoCloseable {
+
+        private final HttpServer server;
+        private final byte[] data;
+        private volatile String eTag = "\"v1\"";
+        /**
+         * Number of bytes the server sends per request, before it drops the connection.
+         */
+        private volatile int dropAfter = Integer.MAX_VALUE;
+        /**
+         * Number of requests to answer with an error, before the server recovers.
+         */
+        private final AtomicInteger failures = new AtomicInteger();
+        private final AtomicInteger requests = new AtomicInteger();
+
+        DroppingServer() throws IOException {
+            data = new byte[100000];
+            for (int i=0; i<data.length; i++) {
+                data[i] = (byte)(i * 31 + i / 256);
+            }
+            server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+            server.createContext("/audio", this::handle);
+            server.start();
+        }
+
+        URL getURL() throws IOException {
+            return new URL("http://127.0.0.1:" + server.getAddress().getPort() + "/audio");
+        }
+
+        private void handle(final HttpExchange exchange) throws IOException {
+            requests.incrementAndGet();
+            if (failures.getAndDecrement() > 0) {
+                exchange.sendResponseHeaders(503, -1);
+                exchange.close();
+                return;
+            }
+            int start = 0;
+            final String range = exchange.getRequestHeaders().getFirst("Range");
+            final String ifRange = exchange.getRequestHeaders().getFirst("If-Range");
+            exchange.getResponseHeaders().add("ETag", eTag);
+            exchange.getResponseHeaders().add("Content-Type", "audio/mpeg");
+            final Matcher matcher = range == null ? null : RANGE.matcher(range);
+            if (matcher != null && matcher.matches() && (ifRange == null || ifRange.equals(eTag))) {
+                start = Integer.parseInt(matcher.group(1));
+                exchange.getResponseHeaders().add("Content-Range", "bytes " + start + "-" + (data.length - 1) + "/" + data.length);
+                exchange.sendResponseHeaders(206, data.length - start);
+            } else {
+                exchange.sendResponseHeaders(200, data.length);
+            }
+            final OutputStream out = exchange.getResponseBody();
+            try {
+                out.write(data, start, Math.min(dropAfter, data.length - start));
+                out.flush();
+            } finally {
+                // closing before all bytes are written drops the connection
+                try {
+                    exchange.close();
+                } catch (RuntimeException e) {
+                    // expected, if we dropped the connection
+                }
+            }
+        }
+
+        @Override
+        public void close() {
+            server.stop(0);
+        }
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * =================================================
+ * Copyright 2026 tagtraum industries incorporated
+ * All rights reserved.
+ * =================================================
+ */
+package com.tagtraum.casampledsp;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+
+import static org.junit.Assert.*;
+
+/**
+ * TestCASpoolChannel.
+ *
+ * @author <a href="mailto:hs@tagtraum.com">Hendrik Schreiber</a>
+ */
+public class TestCASpoolChannel {
+
+    private static byte[] createData(final int length) {
+        final byte[] data = new byte[length];
+        for (int i=0; i<length; i++) {
+            data[i] = (byte)(i * 31 + i / 256);
+        }
+        return data;
+    }
+
+    private static void assertReadAt(final CASpoolChannel spool, final byte[] data, final int position, final int length) throws IOException {
+        spool.position(position);
+        final ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (spool.read(buffer) < 0) break;
+        }
+        final int expectedLength = Math.max(0, Math.min(length, data.length - position));
+        assertEquals(expectedLength, buffer.position());
+        for (int i=0; i<expectedLength; i++) {
+            assertEquals("Byte at " + (position + i), data[position + i], buffer.get(i));
+        }
+    }
+
+    @Test
+    public void testSeekInMemory() throws IOException {
+        final byte[] data = createData(200 * 1024);
+        try (final CASpoolChannel spool = new CASpoolChannel(new ByteArrayInputStream(data), 1024 * 1024)) {
+            assertEquals(0, spool.size());
+            assertReadAt(spool, data, 0, 1000);
+            assertTrue(spool.size() >= 1000);
+            // forward, straddling chunks
+            assertReadAt(spool, data, CASpoolChannel.CHUNK_SIZE - 10, 5000);
+            // backward
+            assertReadAt(spool, data, 10, 100);
+            assertReadAt(spool, data, data.length - 50, 100);
+            assertTrue(spool.isComplete());
+            assertEquals(data.length, spool.size());
+            assertFalse(spool.isSpilled());
+            spool.position(data.length);
+            assertEquals(-1, spool.read(ByteBuffer.allocate(10)));
+        }
+    }
+
+    @Test
+    public void testSpillToFile() throws IOException {
+        final byte[] data = createData(300 * 1024);
+        // rounded down to 128 kB
+        try (final CASpoolChannel spool = new CASpoolChannel(new ByteArrayInputStream(data), 150 * 1024)) {
+            assertEquals(2 * CASpoolChannel.CHUNK_SIZE, spool.getMaxMemory());
+            assertReadAt(spool, data, 250 * 1024, 1000);
+            assertTrue(spool.isSpilled());
+            // straddling memory and file
+            assertReadAt(spool, data, (int)spool.getMaxMemory() - 100, 1000);
+            assertReadAt(spool, data, 0, data.length);
+            assertEquals(data.length, spool.size());
+        }
+    }
+
+    @Test
+    public void testSlowSource() throws IOException {
+        final byte[] data = createData(10000);
+        // source that delivers at most 7 bytes at a time
+        final InputStream source = new ByteArrayInputStream(data) {
+            @Override
+            public synchronized int read(final byte[] b, final int off, final int len) {
+                return super.read(b, off, Math.min(7, len));
+            }
+        };
+        try (final CASpoolChannel spool = new CASpoolChannel(source, 0)) {
+            assertReadAt(spool, data, 0, data.length);
+            assertReadAt(spool, data, 5000, 3000);
+            assertTrue(spool.isSpilled());
+        }
+    }
+
+    @Test
+    public void testClosed() throws IOException {
+        final CASpoolChannel spool = new CASpoolChannel(new ByteArrayInputStream(createData(100)), 0);
+        spool.close();
+        assertFalse(spool.isOpen());
+        try {
+            spool.read(ByteBuffer.allocate(10));
+            fail("Expected ClosedChannelException");
+        } catch (ClosedChannelException e) {
+            // expected
+        }
+        // closing twice does no harm
+        spool.close();
+    }
+}
@@ -11,6 +11,16 @@ import org.junit.Test;
 import javax.sound.sampled.AudioFileFormat;
 import javax.sound.sampled.UnsupportedAudioFileException;
 import java.io.*;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.Pipe;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.util.Arrays;
 import java.util.Random;
 import java.util.concurrent.TimeUnit;
 
@@ -94,6 +104,258 @@ public class TestCAStreamInputStream {
         }
     }
 
+    @Test
+    public void testReadThroughWaveFileViaChannels() throws IOException, UnsupportedAudioFileException {
+        final String filename = "test.wav";
+        final File file = File.createTempFile("testReadThroughWaveFileViaChannels", filename);
+        extractFile(filename, file);
+
+        try (final FileChannel fileChannel = FileChannel.open(file.toPath());
+             final ReadableByteChannel channel = Channels.newChannel(new ByteArrayInputStream(Files.readAllBytes(file.toPath())));
+             final CAStreamInputStream mappedIn = new CAStreamInputStream(fileChannel, 0);
+             final CAStreamInputStream channelIn = new CAStreamInputStream(channel, 0, 64 * 1024)) {
+            final byte[] mapped = readFully(mappedIn);
+            assertArrayEquals(mapped, readFully(channelIn));
+            assertEquals(133632, (mapped.length / 4));
+            assertEquals(file.length(), fileChannel.position());
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testAdaptiveFeedSize() throws IOException, UnsupportedAudioFileException {
+        final String filename = "test.mp3";
+        final File file = File.createTempFile("testAdaptiveFeedSize", filename);
+        extractFile(filename, file);
+        final byte[] data = Files.readAllBytes(file.toPath());
+        file.delete();
+
+        try (final CAStreamInputStream in = new CAStreamInputStream(new ByteArrayInputStream(data), 0, 256 * 1024)) {
+            readFully(in);
+            assertEquals(data.length, in.getBytesFed());
+            assertTrue(in.getFeedSize() > CAStreamInputStream.MIN_FEED_SIZE);
+            assertTrue(in.getParseCalls() < data.length / CAStreamInputStream.MIN_FEED_SIZE);
+            assertTrue(in.getFeedThroughput() > 0);
+        }
+
+        // a source that only ever delivers a little data at a time, like a live stream
+        final InputStream trickle = new FilterInputStream(new ByteArrayInputStream(data)) {
+            @Override
+            public int read(final byte[] b, final int off, final int len) throws IOException {
+                return super.read(b, off, Math.min(len, 512));
+            }
+        };
+        try (final CAStreamInputStream in = new CAStreamInputStream(trickle, 0, 256 * 1024)) {
+            readFully(in);
+            assertEquals(data.length, in.getBytesFed());
+            assertEquals(CAStreamInputStream.MIN_FEED_SIZE, in.getFeedSize());
+        }
+    }
+
+    @Test
+    public void testGrowNativeBuffer() throws IOException, UnsupportedAudioFileException {
+        final String filename = "test.wav";
+        final File file = File.createTempFile("testGrowNativeBuffer", filename);
+        extractFile(filename, file);
+        final AudioFileFormat audioFileFormat = new CAAudioFileReader().getAudioFileFormat(file);
+
+        int bytesRead = 0;
+        try (final CAStreamInputStream in = new CAStreamInputStream(new FileInputStream(file), 0, 4 * 1024)) {
+            in.setBufferFormat(audioFileFormat.getFormat());
+            assertTrue(in.read() != -1);
+            bytesRead++;
+            final ByteBuffer pending = ByteBuffer.allocate(in.nativeBuffer.remaining());
+            pending.put(in.nativeBuffer.duplicate());
+            pending.flip();
+            final int position = in.nativeBuffer.position();
+            final ByteBuffer old = in.nativeBuffer;
+
+            in.growNativeBuffer(64 * 1024 + 1);
+            assertTrue(in.nativeBuffer.capacity() > 64 * 1024);
+            // views may still refer to the old buffer, so it must not be handed to another stream
+            final ByteBuffer acquired = CADirectBufferPool.getDefault().acquire(old.capacity());
+            assertNotSame(old, acquired);
+            CADirectBufferPool.getDefault().release(acquired);
+            assertEquals(position, in.nativeBuffer.position());
+            assertEquals(pending, in.nativeBuffer);
+            assertTrue(CANativePeerInputStream.getBufferHighWaterMark(audioFileFormat.getFormat()) >= in.nativeBuffer.capacity());
+            assertTrue(CANativePeerInputStream.getBufferSize(audioFileFormat.getFormat()) >= in.nativeBuffer.capacity());
+
+            int justRead;
+            final byte[] buf = new byte[1024];
+            while ((justRead = in.read(buf)) != -1) {
+                bytesRead += justRead;
+            }
+        } finally {
+            file.delete();
+        }
+        assertEquals(133632, (bytesRead / 4));
+    }
+
+    @Test
+    public void testSeekChannel() throws IOException, UnsupportedAudioFileException {
+        final String filename = "test.wav";
+        final File file = File.createTempFile("testSeekChannel", filename);
+        extractFile(filename, file);
+
+        try (final FileChannel channel = FileChannel.open(file.toPath());
+             final CAStreamInputStream in = new CAStreamInputStream(channel, 0, 64 * 1024);
+             final CAURLInputStream reference = new CAURLInputStream(file.toURI().toURL())) {
+            assertTrue(in.isSeekable());
+            final byte[] start = new byte[1024];
+            final byte[] buf = new byte[1024];
+            final byte[] expected = new byte[1024];
+            assertEquals(start.length, in.read(start));
+
+            // forward, to a position that has not been parsed yet
+            in.seek(2, TimeUnit.SECONDS);
+            reference.seek(2, TimeUnit.SECONDS);
+            assertEquals(buf.length, in.read(buf));
+            assertEquals(expected.length, reference.read(expected));
+            assertArrayEquals(expected, buf);
+
+            // backward
+            in.seek(0, TimeUnit.SECONDS);
+            assertEquals(buf.length, in.read(buf));
+            assertArrayEquals(start, buf);
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testSeekStraddledPackets() throws IOException, UnsupportedAudioFileException {
+        final String filename = "test.mp3";
+        final File file = File.createTempFile("testSeekStraddledPackets", filename);
+        extractFile(filename, file);
+
+        // tiny reads make packets straddle parse calls, so the parser delivers them from its own buffer
+        try (final FileChannel channel = FileChannel.open(file.toPath());
+             final CAStreamInputStream in = new CAStreamInputStream(new TricklingChannel(channel, 301), 0, 64 * 1024);
+             final FileChannel referenceChannel = FileChannel.open(file.toPath());
+             final CAStreamInputStream reference = new CAStreamInputStream(referenceChannel, 0, 64 * 1024)) {
+            assertTrue(in.isSeekable());
+            final byte[] buf = new byte[1024];
+            final byte[] expected = new byte[1024];
+            // parse everything, so that seeking back relies on the packet index
+            while (in.read(buf) != -1) {
+                // read on
+            }
+            in.seek(1, TimeUnit.SECONDS);
+            reference.seek(1, TimeUnit.SECONDS);
+            assertEquals(expected.length, reference.read(expected));
+            assertEquals(buf.length, in.read(buf));
+            assertArrayEquals(expected, buf);
+
+            in.seek(0, TimeUnit.SECONDS);
+            reference.seek(0, TimeUnit.SECONDS);
+            assertEquals(expected.length, reference.read(expected));
+            assertEquals(buf.length, in.read(buf));
+            assertArrayEquals(expected, buf);
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testSeekStraddledFirstPacket() throws IOException, UnsupportedAudioFileException {
+        final String filename = "test.mp3";
+        final File file = File.createTempFile("testSeekStraddledFirstPacket", filename);
+        extractFile(filename, file);
+
+        // the audio data starts after a 4608 byte ID3 tag, so the first packet straddles the first two reads
+        // and its offset is only known from the header
+        try (final FileChannel channel = FileChannel.open(file.toPath());
+             final CAStreamInputStream in = new CAStreamInputStream(new TricklingChannel(channel, 64 * 1024, 4608 + 300), 0, 64 * 1024);
+             final FileChannel referenceChannel = FileChannel.open(file.toPath());
+             final CAStreamInputStream reference = new CAStreamInputStream(referenceChannel, 0, 64 * 1024)) {
+            assertTrue(in.isSeekable());
+            final byte[] buf = new byte[1024];
+            final byte[] expected = new byte[1024];
+            assertEquals(expected.length, reference.read(expected));
+            assertEquals(buf.length, in.read(buf));
+            assertArrayEquals(expected, buf);
+
+            in.seek(1, TimeUnit.SECONDS);
+            assertEquals(buf.length, in.read(buf));
+            in.seek(0, TimeUnit.SECONDS);
+            assertEquals(buf.length, in.read(buf));
+            assertArrayEquals(expected, buf);
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testSeekSpooled() throws IOException, UnsupportedAudioFileException {
+        final String filename = "test.wav";
+        final File file = File.createTempFile("testSeekSpooled", filename);
+        extractFile(filename, file);
+
+        // keep only 64 kB in memory, so that seeking back has to read from the spill file
+        try (final InputStream stream = new BufferedInputStream(new FileInputStream(file));
+             final CAStreamInputStream in = CAStreamInputStream.spooled(stream, 64 * 1024, 0, 64 * 1024)) {
+            assertTrue(in.isSeekable());
+            final byte[] start = new byte[1024];
+            final byte[] buf = new byte[1024];
+            assertEquals(start.length, in.read(start));
+            in.seek(2, TimeUnit.SECONDS);
+            assertEquals(buf.length, in.read(buf));
+            in.seek(0, TimeUnit.SECONDS);
+            assertEquals(buf.length, in.read(buf));
+            assertArrayEquals(start, buf);
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testFollowGrowingFile() throws IOException, UnsupportedAudioFileException, InterruptedException {
+        final String filename = "test.wav";
+        final File source = File.createTempFile("testFollowGrowingFileSource", filename);
+        extractFile(filename, source);
+        final byte[] data = Files.readAllBytes(source.toPath());
+        source.delete();
+        final File file = File.createTempFile("testFollowGrowingFile", filename);
+        // simulate a recorder: first half right away, second half later
+        final int half = data.length / 2;
+        Files.write(file.toPath(), Arrays.copyOf(data, half));
+        final Thread recorder = new Thread(() -> {
+            try {
+                Thread.sleep(300);
+                try (final OutputStream out = new FileOutputStream(file, true)) {
+                    out.write(data, half, data.length - half);
+                }
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        });
+        try (final FileChannel channel = FileChannel.open(file.toPath());
+             final CAStreamInputStream in = CAStreamInputStream.follow(channel, 0, 64 * 1024, 500, TimeUnit.MILLISECONDS)) {
+            assertTrue(in.isFollowing());
+            recorder.start();
+            final long start = System.currentTimeMillis();
+            final byte[] decoded = readFully(in);
+            // the stream only ends after the idle timeout
+            assertTrue(System.currentTimeMillis() - start >= 800);
+            assertEquals(133632, (decoded.length / 4));
+            assertEquals(data.length, channel.position());
+        } finally {
+            recorder.join();
+            file.delete();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNonBlockingChannel() throws IOException, UnsupportedAudioFileException {
+        final Pipe pipe = Pipe.open();
+        try (final Pipe.SourceChannel source = pipe.source(); final Pipe.SinkChannel sink = pipe.sink()) {
+            source.configureBlocking(false);
+            new CAStreamInputStream(source, 0).close();
+        }
+    }
+
     @Test
     public void testNotSeekable() throws IOException, UnsupportedAudioFileException {
         final String filename = "test.wav";
@@ -112,6 +374,16 @@ public class TestCAStreamInputStream {
         }
     }
 
+    private static byte[] readFully(final InputStream in) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final byte[] buf = new byte[1024];
+        int justRead;
+        while ((justRead = in.read(buf)) != -1) {
+            out.write(buf, 0, justRead);
+        }
+        return out.toByteArray();
+    }
+
     private void extractFile(final String filename, final File file) throws IOException {
         try (final InputStream in = getClass().getResourceAsStream(filename);
              final OutputStream out = new FileOutputStream(file)) {
@@ -122,4 +394,77 @@ public class TestCAStreamInputStream {
             }
         }
     }
+
+    /**
+     * Seekable channel that returns at most a few bytes per read.
+     */
+    private static class TricklingChannel implements SeekableByteChannel {
+
+        private final SeekableByteChannel channel;
+        private final int maxRead;
+        private final long split;
+
+        private TricklingChannel(final SeekableByteChannel channel, final int maxRead) {
+            this(channel, maxRead, -1);
+        }
+
+        /**
+         * @param channel channel to read from
+         * @param maxRead most bytes returned by one read
+         * @param split offset no read reaches across
+         */
+        private TricklingChannel(final SeekableByteChannel channel, final int maxRead, final long split) {
+            this.channel = channel;
+            this.maxRead = maxRead;
+            this.split = split;
+        }
+
+        @Override
+        public int read(final ByteBuffer dst) throws IOException {
+            final long position = channel.position();
+            final int max = position < split ? (int)Math.min(maxRead, split - position) : maxRead;
+            final ByteBuffer limited = dst.duplicate();
+            // we cast, because of https://github.com/eclipse/jetty.project/issues/3244
+            ((Buffer)limited).limit(Math.min(dst.limit(), dst.position() + max));
+            final int justRead = channel.read(limited);
+            if (justRead > 0) ((Buffer)dst).position(dst.position() + justRead);
+            return justRead;
+        }
+
+        @Override
+        public int write(final ByteBuffer src) throws IOException {
+            throw new NonWritableChannelException();
+        }
+
+        @Override
+        public long position() throws IOException {
+            return channel.position();
+        }
+
+        @Override
+        public SeekableByteChannel position(final long newPosition) throws IOException {
+            channel.position(newPosition);
+            return this;
+        }
+
+        @Override
+        public long size() throws IOException {
+            return channel.size();
+        }
+
+        @Override
+        public SeekableByteChannel truncate(final long size) throws IOException {
+            throw new NonWritableChannelException();
+        }
+
+        @Override
+        public boolean isOpen() {
+            return channel.isOpen();
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
 }
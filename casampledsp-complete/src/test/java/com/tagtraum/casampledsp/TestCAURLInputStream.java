@@ -9,9 +9,16 @@ package com.tagtraum.casampledsp;
 import org.junit.Test;
 
 import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioFormat;
 import javax.sound.sampled.UnsupportedAudioFileException;
 import java.io.*;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Random;
@@ -98,6 +105,202 @@ public class TestCAURLInputStream {
         assertEquals(157045, bytesRead);
     }
 
+    @Test
+    public void testReadThrough48kWavFileViaChannel() throws IOException, UnsupportedAudioFileException {
+        final String filename = "test_48k.wav";
+        final File file = File.createTempFile("testReadThrough48kWavFileViaChannel", filename);
+        extractFile(filename, file);
+        int bytesRead = 0;
+
+        final AudioFileFormat audioFileFormat = new CAAudioFileReader().getAudioFileFormat(file);
+
+        try (final CAAudioInputStream in = new CAAudioInputStream(new CAURLInputStream(file.toURI().toURL()), audioFileFormat.getFormat(), audioFileFormat.getFrameLength());
+             final ReadableByteChannel channel = in.getChannel()) {
+            final ByteBuffer buf = ByteBuffer.allocateDirect(1024);
+            int justRead;
+            while ((justRead = channel.read(buf)) != -1) {
+                assertTrue(justRead > 0);
+                assertEquals(0, justRead % audioFileFormat.getFormat().getFrameSize());
+                bytesRead += justRead;
+                buf.clear();
+            }
+        } finally {
+            file.delete();
+        }
+        assertEquals(581800, bytesRead);
+    }
+
+    @Test
+    public void testReadThrough48kWavFileAsShorts() throws IOException, UnsupportedAudioFileException {
+        final String filename = "test_48k.wav";
+        final File file = File.createTempFile("testReadThrough48kWavFileAsShorts", filename);
+        extractFile(filename, file);
+        long samplesRead = 0;
+
+        final AudioFileFormat audioFileFormat = new CAAudioFileReader().getAudioFileFormat(file);
+        final AudioFormat format = audioFileFormat.getFormat();
+
+        try (final CAAudioInputStream shortIn = new CAAudioInputStream(new CAURLInputStream(file.toURI().toURL(), 4000), format, audioFileFormat.getFrameLength());
+             final CAAudioInputStream byteIn = new CAAudioInputStream(new CAURLInputStream(file.toURI().toURL()), format, audioFileFormat.getFrameLength())) {
+            final byte[] buf = new byte[2];
+            ShortBuffer samples;
+            while ((samples = shortIn.readShortBlock()) != null) {
+                assertTrue(samples.hasRemaining());
+                assertEquals(0, samples.remaining() % format.getChannels());
+                while (samples.hasRemaining()) {
+                    final short sample = samples.get();
+                    if (samplesRead < 1000) {
+                        assertEquals(2, byteIn.read(buf));
+                        final short expected = format.isBigEndian()
+                            ? (short)((buf[0] << 8) | (buf[1] & 0xff))
+                            : (short)((buf[1] << 8) | (buf[0] & 0xff));
+                        assertEquals(expected, sample);
+                    }
+                    samplesRead++;
+                }
+            }
+        } finally {
+            file.delete();
+        }
+        assertEquals(581800, samplesRead * 2);
+    }
+
+    @Test
+    public void testBlockViewSurvivesClose() throws IOException, UnsupportedAudioFileException {
+        final String filename = "test_48k.wav";
+        final File file = File.createTempFile("testBlockViewSurvivesClose", filename);
+        extractFile(filename, file);
+
+        final AudioFileFormat audioFileFormat = new CAAudioFileReader().getAudioFileFormat(file);
+        final AudioFormat format = audioFileFormat.getFormat();
+        try {
+            final ShortBuffer view;
+            final short[] expected;
+            try (final CAAudioInputStream in = new CAAudioInputStream(new CAURLInputStream(file.toURI().toURL(), 4000), format, audioFileFormat.getFrameLength())) {
+                view = in.readShortBlock();
+                assertNotNull(view);
+                expected = new short[view.remaining()];
+                view.duplicate().get(expected);
+            }
+            // a second stream with the same buffer size must not receive the closed stream's viewed buffer
+            try (final CAAudioInputStream other = new CAAudioInputStream(new CAURLInputStream(file.toURI().toURL(), 4000), format, audioFileFormat.getFrameLength())) {
+                other.seek(1, TimeUnit.SECONDS);
+                assertNotNull(other.readShortBlock());
+            }
+            final short[] actual = new short[view.remaining()];
+            view.duplicate().get(actual);
+            assertTrue(Arrays.equals(expected, actual));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testReadFrames48kWavFileAsFloats() throws IOException, UnsupportedAudioFileException {
+        final String filename = "test_48k.wav";
+        final File file = File.createTempFile("testReadFrames48kWavFileAsFloats", filename);
+        extractFile(filename, file);
+        long framesRead = 0;
+
+        final AudioFileFormat audioFileFormat = new CAAudioFileReader().getAudioFileFormat(file);
+        final AudioFormat format = audioFileFormat.getFormat();
+
+        // odd buffer size, so that frames straddle native buffer fills
+        try (final CAAudioInputStream floatIn = new CAAudioInputStream(new CAURLInputStream(file.toURI().toURL(), 4001), format, audioFileFormat.getFrameLength());
+             final CAAudioInputStream byteIn = new CAAudioInputStream(new CAURLInputStream(file.toURI().toURL()), format, audioFileFormat.getFrameLength())) {
+            final float[] samples = new float[format.getChannels() * 333];
+            final ByteBuffer bytes = ByteBuffer.allocate(format.getFrameSize() * 333)
+                .order(format.isBigEndian() ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN);
+            int frames;
+            while ((frames = floatIn.readFrames(samples, 0, 333)) != -1) {
+                assertTrue(frames > 0);
+                bytes.clear();
+                assertEquals(frames, byteIn.readFrames(bytes, frames));
+                bytes.flip();
+                for (int i=0; i<frames * format.getChannels(); i++) {
+                    assertEquals(bytes.getShort() / 32768f, samples[i], 0f);
+                }
+                framesRead += frames;
+            }
+            assertEquals(-1, byteIn.readFrames(bytes, 1));
+        } finally {
+            file.delete();
+        }
+        assertEquals(581800 / format.getFrameSize(), framesRead);
+    }
+
+    @Test
+    public void testReadPlanarFrames48kWavFile() throws IOException, UnsupportedAudioFileException {
+        final String filename = "test_48k.wav";
+        final File file = File.createTempFile("testReadPlanarFrames48kWavFile", filename);
+        extractFile(filename, file);
+        long framesRead = 0;
+
+        final AudioFileFormat audioFileFormat = new CAAudioFileReader().getAudioFileFormat(file);
+        final AudioFormat format = audioFileFormat.getFormat();
+        final int channels = format.getChannels();
+
+        try (final CAAudioInputStream planarIn = new CAAudioInputStream(new CAURLInputStream(file.toURI().toURL(), 4001), format, audioFileFormat.getFrameLength());
+             final CAAudioInputStream interleavedIn = new CAAudioInputStream(new CAURLInputStream(file.toURI().toURL()), format, audioFileFormat.getFrameLength())) {
+            final float[][] planar = new float[channels][500];
+            // only convert the first channel
+            final FloatBuffer[] buffers = new FloatBuffer[channels];
+            buffers[0] = FloatBuffer.allocate(500);
+            final float[] interleaved = new float[channels * 500];
+            int frames;
+            boolean toArrays = true;
+            while ((frames = interleavedIn.readFrames(interleaved, 0, 250)) != -1) {
+                toArrays = !toArrays;
+                if (toArrays) {
+                    assertEquals(frames, planarIn.readPlanarFrames(planar, 0, frames));
+                    for (int i=0; i<frames; i++) {
+                        for (int c=0; c<channels; c++) {
+                            assertEquals(interleaved[i * channels + c], planar[c][i], 0f);
+                        }
+                    }
+                } else {
+                    buffers[0].clear();
+                    assertEquals(frames, planarIn.readPlanarFrames(buffers, frames, 1L));
+                    assertEquals(frames, buffers[0].position());
+                    for (int i=0; i<frames; i++) {
+                        assertEquals(interleaved[i * channels], buffers[0].get(i), 0f);
+                    }
+                }
+                framesRead += frames;
+            }
+            assertEquals(-1, planarIn.readPlanarFrames(planar, 0, 1));
+        } finally {
+            file.delete();
+        }
+        assertEquals(581800 / format.getFrameSize(), framesRead);
+    }
+
+    @Test
+    public void testTransferTo48kWavFile() throws IOException, UnsupportedAudioFileException {
+        final String filename = "test_48k.wav";
+        final File file = File.createTempFile("testTransferTo48kWavFile", filename);
+        final File target = File.createTempFile("testTransferTo48kWavFile", ".pcm");
+        extractFile(filename, file);
+
+        final AudioFileFormat audioFileFormat = new CAAudioFileReader().getAudioFileFormat(file);
+        final AudioFormat format = audioFileFormat.getFormat();
+
+        try (final CAAudioInputStream channelIn = new CAAudioInputStream(new CAURLInputStream(file.toURI().toURL(), 4001), format, audioFileFormat.getFrameLength());
+             final CAAudioInputStream streamIn = new CAAudioInputStream(new CAURLInputStream(file.toURI().toURL(), 4001), format, audioFileFormat.getFrameLength());
+             final FileOutputStream fileOut = new FileOutputStream(target)) {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            assertEquals(581800, streamIn.transferTo(out));
+            assertEquals(581800, out.size());
+            assertEquals(581800, channelIn.transferTo(fileOut.getChannel()));
+            assertEquals(0, channelIn.transferTo(out));
+            assertEquals(581800, target.length());
+            assertArrayEquals(out.toByteArray(), Files.readAllBytes(target.toPath()));
+        } finally {
+            file.delete();
+            target.delete();
+        }
+    }
+
     private int readThroughFile(final String prefix, final String filename) throws IOException, UnsupportedAudioFileException {
         final File file = File.createTempFile(prefix, filename);
         extractFile(filename, file);
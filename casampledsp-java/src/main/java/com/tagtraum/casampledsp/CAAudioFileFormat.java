@@ -84,6 +84,27 @@ public class CAAudioFileFormat extends AudioFileFormat {
         }
     }
 
+    /**
+     * Creates a file format with an exact length, as determined by a {@link CAStreamInputStream#scan() scan}.
+     *
+     * @param url url or {@code null}
+     * @param format format of the audio data, as seen by the parser
+     * @param frameLength length in frames (i.e. packets for compressed formats)
+     * @param durationInMicroSeconds duration
+     * @throws UnsupportedAudioFileException if the file type cannot be determined
+     */
+    CAAudioFileFormat(final String url, final AudioFormat format, final long frameLength,
+                      final long durationInMicroSeconds) throws UnsupportedAudioFileException {
+        super(getAudioFileFormatType(url, ((CAAudioFormat.CAEncoding)format.getEncoding()).getDataFormat()),
+            url == null ? -1 : getLength(url), format,
+            frameLength > 0 && frameLength <= Integer.MAX_VALUE ? (int)frameLength : AudioSystem.NOT_SPECIFIED
+        );
+        this.properties = new HashMap<>();
+        if (durationInMicroSeconds > 0) {
+            this.properties.put("duration", durationInMicroSeconds);
+        }
+    }
+
     private static int getLength(final String urlString) {
         try {
             final URL url = new URL(urlString);
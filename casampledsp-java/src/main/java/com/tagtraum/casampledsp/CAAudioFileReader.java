@@ -21,17 +21,33 @@
 package com.tagtraum.casampledsp;
 
 import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioFormat;
 import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
 import javax.sound.sampled.UnsupportedAudioFileException;
 import javax.sound.sampled.spi.AudioFileReader;
 import java.io.*;
+import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
+import java.net.URISyntaxException;
 import java.net.URL;
 import java.net.URLConnection;
 import java.net.URLEncoder;
-import java.util.Collections;
-import java.util.LinkedHashMap;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collection;
 import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * Open URLs/files or streams and returns a {@link AudioFileFormat} instance.
@@ -40,6 +56,7 @@ import java.util.Map;
  */
 public class CAAudioFileReader extends AudioFileReader {
 
+    private static final Logger LOG = Logger.getLogger(CAAudioFileReader.class.getName());
     private static final boolean nativeLibraryLoaded;
 
     static {
@@ -47,22 +64,18 @@ public class CAAudioFileReader extends AudioFileReader {
         nativeLibraryLoaded = CANativeLibraryLoader.loadLibrary();
     }
 
-    private static final Map<URL, AudioFileFormat> cache = Collections.synchronizedMap(new LinkedHashMap<URL, AudioFileFormat>() {
-        private static final int MAX_ENTRIES = 20;
-
-        protected boolean removeEldestEntry(final Map.Entry eldest) {
-            return size() > MAX_ENTRIES;
-        }
-    });
     private int connectTimeout = 5000;
-
-    private static void addAudioAudioFileFormatToCache(final URL url, final AudioFileFormat audioFileFormat) {
-        cache.put(url, audioFileFormat);
-    }
-
-    private static AudioFileFormat getAudioFileFormatFromCache(final URL url) {
-        return cache.get(url);
-    }
+    private int readTimeout;
+    private int resumeRetries = Integer.parseInt(System.getProperty("CA_RESUME_RETRIES", "0"));
+    private long remoteFormatMaxAge = Long.parseLong(System.getProperty("CA_REMOTE_FORMAT_MAX_AGE", "60000"));
+    private CAFormatIndex formatIndex = CAFormatIndex.getDefault();
+    private Executor batchExecutor = CAProbeBatch.DEFAULT_EXECUTOR;
+    /**
+     * Initial native buffer size for live streams. Grows, if necessary.
+     */
+    private static final int LIVE_BUFFER_SIZE = 16 * 1024;
+    private boolean spooling = Boolean.getBoolean("CA_SPOOL_STREAMS");
+    private long spoolMemory = 1024L * Long.parseLong(System.getProperty("CA_SPOOL_MEMORY", "16384"));
 
     /**
      * In case a resource is located on the network, use the given connection timeout (in ms).
@@ -82,6 +95,151 @@ public class CAAudioFileReader extends AudioFileReader {
         return connectTimeout;
     }
 
+    /**
+     * In case a resource is located on the network, consider its connection dropped,
+     * if no data arrives for the given time (in ms). Defaults to {@code 0}, i.e. no timeout.
+     * Resuming audio streams (see {@link #setResumeRetries(int)}) treat a timeout like a dropped connection.
+     *
+     * @param readTimeout timeout or {@code 0} for none
+     * @see #setResumeRetries(int)
+     */
+    public void setReadTimeout(final int readTimeout) {
+        this.readTimeout = readTimeout;
+    }
+
+    /**
+     * Return the read timeout for network resources.
+     *
+     * @return timeout in ms
+     */
+    public int getReadTimeout() {
+        return readTimeout;
+    }
+
+    /**
+     * Max number of times in a row audio streams opened from http(s) URLs try to reconnect, when their connection drops.
+     * Reconnected streams resume at the byte they stopped at, see {@link CAResumableInputStream}.
+     * Defaults to the value of the system property {@code CA_RESUME_RETRIES} or {@code 0}, which turns resuming off.
+     *
+     * @param resumeRetries retries
+     */
+    public void setResumeRetries(final int resumeRetries) {
+        if (resumeRetries < 0) throw new IllegalArgumentException("Resume retries must not be negative: " + resumeRetries);
+        this.resumeRetries = resumeRetries;
+    }
+
+    /**
+     * Max number of times in a row audio streams opened from http(s) URLs try to reconnect.
+     *
+     * @return retries
+     */
+    public int getResumeRetries() {
+        return resumeRetries;
+    }
+
+    /**
+     * Time (in ms) for which cached formats of remote resources are used without asking the server,
+     * whether the resource changed. Once that time passed, the format is revalidated with a {@code HEAD} request.
+     * Defaults to the value of the system property {@code CA_REMOTE_FORMAT_MAX_AGE} or 60000.
+     *
+     * @param remoteFormatMaxAge max age in ms
+     */
+    public void setRemoteFormatMaxAge(final long remoteFormatMaxAge) {
+        if (remoteFormatMaxAge < 0) throw new IllegalArgumentException("Max age must not be negative: " + remoteFormatMaxAge);
+        this.remoteFormatMaxAge = remoteFormatMaxAge;
+    }
+
+    /**
+     * Time (in ms) for which cached formats of remote resources are used without asking the server.
+     *
+     * @return max age in ms
+     */
+    public long getRemoteFormatMaxAge() {
+        return remoteFormatMaxAge;
+    }
+
+    /**
+     * Persistent index to consult, before probing a file, and to add probed formats to.
+     * Defaults to {@link CAFormatIndex#getDefault()}.
+     *
+     * @param formatIndex index or {@code null} for none
+     */
+    public void setFormatIndex(final CAFormatIndex formatIndex) {
+        this.formatIndex = formatIndex;
+    }
+
+    /**
+     * Persistent index consulted, before probing a file.
+     *
+     * @return index or {@code null}
+     */
+    public CAFormatIndex getFormatIndex() {
+        return formatIndex;
+    }
+
+    /**
+     * Executor used by {@link #getAudioFileFormats(Collection)}. Defaults to a shared {@link ForkJoinPool}
+     * in async mode with one thread per processor.
+     * For spinning disks, an executor with a single thread or very few threads avoids seeking between files.
+     * The executor should run tasks in the order they were submitted, so a {@link ForkJoinPool} should be
+     * in async mode. Otherwise, the chunks of a directory are probed in reverse order.
+     *
+     * @param batchExecutor executor
+     */
+    public void setBatchExecutor(final Executor batchExecutor) {
+        this.batchExecutor = Objects.requireNonNull(batchExecutor, "batchExecutor");
+    }
+
+    /**
+     * Executor used by {@link #getAudioFileFormats(Collection)}.
+     *
+     * @return executor
+     */
+    public Executor getBatchExecutor() {
+        return batchExecutor;
+    }
+
+    /**
+     * Lets audio streams opened from {@link InputStream}s and non-file URLs spool the data they read,
+     * so that they become seekable. Defaults to the value of the system property {@code CA_SPOOL_STREAMS}.
+     *
+     * @param spooling true or false
+     * @see CASpoolChannel
+     */
+    public void setSpooling(final boolean spooling) {
+        this.spooling = spooling;
+    }
+
+    /**
+     * Indicates whether audio streams opened from {@link InputStream}s and non-file URLs are spooled.
+     *
+     * @return true or false
+     */
+    public boolean isSpooling() {
+        return spooling;
+    }
+
+    /**
+     * Max number of bytes a spooled stream keeps in memory, before it spills to a temporary file.
+     * Defaults to the value of the system property {@code CA_SPOOL_MEMORY}
+     * (in kilo bytes (kB), <em>not bytes</em>) or 16 MB.
+     *
+     * @param spoolMemory bytes
+     */
+    public void setSpoolMemory(final long spoolMemory) {
+        if (spoolMemory < 0) throw new IllegalArgumentException("Spool memory must not be negative: " + spoolMemory);
+        this.spoolMemory = spoolMemory;
+    }
+
+    /**
+     * Max number of bytes a spooled stream keeps in memory.
+     *
+     * @return bytes
+     */
+    public long getSpoolMemory() {
+        return spoolMemory;
+    }
+
     @Override
     public AudioFileFormat getAudioFileFormat(final InputStream stream) throws UnsupportedAudioFileException, IOException {
         if (!nativeLibraryLoaded) throw new UnsupportedAudioFileException("Native library casampledsp not loaded.");
@@ -108,6 +266,22 @@ public class CAAudioFileReader extends AudioFileReader {
         return getAudioFileFormat(fileToURL(file));
     }
 
+    /**
+     * Probes many files in parallel on the {@link #getBatchExecutor() batch executor}.
+     * <p>
+     * Files are probed directory by directory, ordered by inode to reduce seeking,
+     * in chunks that are spread across the executor's threads.
+     * Each file's future completes with its format, or exceptionally, if the file cannot be probed,
+     * without affecting the rest of the batch.
+     *
+     * @param paths audio files
+     * @return futures by file, in the order of {@code paths}
+     * @see #getAudioFileFormat(File)
+     */
+    public Map<Path, CompletableFuture<AudioFileFormat>> getAudioFileFormats(final Collection<Path> paths) {
+        return CAProbeBatch.submit(paths, path -> getAudioFileFormat(path.toFile()), batchExecutor);
+    }
+
     /**
      * Convert file to URL. Assumes that any punctuation in the filename needs to be url encoded.
      *
@@ -157,29 +331,210 @@ public class CAAudioFileReader extends AudioFileReader {
         }
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Formats are cached in the {@link CAFormatCache#getDefault() default cache}.
+     * Cached formats of files are only used, if the file's size and modification time did not change.
+     * Cached formats of remote resources are used without contacting the server for
+     * {@link #getRemoteFormatMaxAge()} ms. Afterwards, they are only used, if their
+     * {@code ETag} or {@code Last-Modified} date did not change.
+     */
     @Override
     public AudioFileFormat getAudioFileFormat(final URL url) throws UnsupportedAudioFileException, IOException {
         if (!nativeLibraryLoaded) throw new UnsupportedAudioFileException("Native library casampledsp not loaded.");
-        final AudioFileFormat fileFormat = getAudioFileFormatFromCache(url);
-        if (fileFormat != null) {
-            return fileFormat;
-        }
+        final CAFormatCache cache = CAFormatCache.getDefault();
+        final String key = url.toString();
         final AudioFileFormat audioFileFormat;
+        final String validator;
         if (isFile(url)) {
-            audioFileFormat = intGetAudioFormat(url.toString());
+            validator = toValidator(url);
+            final AudioFileFormat fileFormat = cache.get(key, validator);
+            if (fileFormat != null) {
+                return fileFormat;
+            }
+            final CAFormatIndex formatIndex = this.formatIndex;
+            final AudioFileFormat indexedFileFormat = formatIndex == null ? null : formatIndex.get(key, validator);
+            if (indexedFileFormat != null) {
+                audioFileFormat = indexedFileFormat;
+            } else {
+                audioFileFormat = intGetAudioFormat(key);
+                addToFormatIndex(key, validator, audioFileFormat);
+            }
         } else {
+            final AudioFileFormat freshFileFormat = cache.getIfFresh(key, remoteFormatMaxAge, TimeUnit.MILLISECONDS);
+            if (freshFileFormat != null) {
+                return freshFileFormat;
+            }
+            boolean revalidated = false;
+            if (isHttp(url) && cache.contains(key)) {
+                // revalidate without downloading anything
+                final String headValidator = toHeadValidator(url);
+                if (headValidator != null) {
+                    revalidated = true;
+                    final AudioFileFormat fileFormat = cache.get(key, headValidator);
+                    if (fileFormat != null) {
+                        // fresh again
+                        cache.put(key, headValidator, fileFormat);
+                        return fileFormat;
+                    }
+                }
+            }
             final URLConnection urlConnection = url.openConnection();
             urlConnection.setConnectTimeout(connectTimeout);
+            urlConnection.setReadTimeout(readTimeout);
+            validator = toValidator(urlConnection);
+            final AudioFileFormat fileFormat = revalidated ? null : cache.get(key, validator);
+            if (fileFormat != null) {
+                disconnect(urlConnection);
+                return fileFormat;
+            }
             final String contentType = urlConnection.getContentType();
-            final InputStream stream = buffer(url.openStream());
-            audioFileFormat = getAudioFileFormat(stream, toFileTypeHint(contentType));
+            try (final InputStream stream = buffer(urlConnection.getInputStream())) {
+                audioFileFormat = getAudioFileFormat(stream, toFileTypeHint(contentType));
+            }
         }
         if (audioFileFormat != null) {
-            addAudioAudioFileFormatToCache(url, audioFileFormat);
+            cache.put(key, validator, audioFileFormat);
         }
         return audioFileFormat;
     }
 
+    private void addToFormatIndex(final String key, final String validator, final AudioFileFormat audioFileFormat) {
+        final CAFormatIndex formatIndex = this.formatIndex;
+        if (formatIndex == null || audioFileFormat == null) return;
+        try {
+            formatIndex.put(key, validator, audioFileFormat);
+        } catch (IOException e) {
+            // the index is an optimization, we still have the format
+            LOG.log(Level.WARNING, "Failed to add " + key + " to " + formatIndex, e);
+        }
+    }
+
+    /**
+     * Validator for cached formats of a file, consisting of its size and modification time.
+     *
+     * @param url file url
+     * @return validator or {@code null}, if the file's attributes cannot be read
+     */
+    private static String toValidator(final URL url) {
+        try {
+            final BasicFileAttributes attributes = Files.readAttributes(Paths.get(url.toURI()), BasicFileAttributes.class);
+            return attributes.size() + "/" + attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+        } catch (IOException | URISyntaxException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Validator for cached formats of a remote resource, i.e. its {@code ETag} or {@code Last-Modified} date.
+     * Connects, if not connected yet.
+     *
+     * @param urlConnection connection
+     * @return validator or {@code null}, if the server sent neither
+     */
+    private static String toValidator(final URLConnection urlConnection) {
+        final String eTag = urlConnection.getHeaderField("ETag");
+        return eTag != null ? eTag : urlConnection.getHeaderField("Last-Modified");
+    }
+
+    /**
+     * Validator of a remote resource, determined with a {@code HEAD} request.
+     *
+     * @param url http(s) url
+     * @return validator or {@code null}, if the server sent neither {@code ETag} nor {@code Last-Modified} date
+     * or does not support {@code HEAD}
+     * @throws IOException if the server cannot be reached
+     */
+    private String toHeadValidator(final URL url) throws IOException {
+        final HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        try {
+            connection.setRequestMethod("HEAD");
+            connection.setConnectTimeout(connectTimeout);
+            connection.setReadTimeout(readTimeout);
+            return connection.getResponseCode() / 100 == 2 ? toValidator(connection) : null;
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private static void disconnect(final URLConnection urlConnection) {
+        if (urlConnection instanceof HttpURLConnection) {
+            ((HttpURLConnection) urlConnection).disconnect();
+        }
+    }
+
+    /**
+     * Determines the exact frame length and duration of the given file by parsing all its packets
+     * without decoding them. This is much faster than decoding, but slower than {@link #getAudioFileFormat(File)},
+     * which may have to estimate the length, e.g. for VBR MP3 files without header.
+     * The scanned packet count and duration replace those of the probed format, which keeps
+     * its other properties, e.g. bit rate. Like the native probe, the scan counts packets, so the frame length
+     * means the same in both. The result is cached and added to the {@link #getFormatIndex() format index},
+     * so that later calls to {@link #getAudioFileFormat(File)} return the exact length,
+     * as long as the file does not change.
+     *
+     * @param file file
+     * @return file format with exact frame length and {@code duration} property
+     * @throws UnsupportedAudioFileException if the format is not supported
+     * @throws IOException if something goes wrong
+     */
+    public AudioFileFormat scanAudioFileFormat(final File file) throws UnsupportedAudioFileException, IOException {
+        if (!nativeLibraryLoaded) throw new UnsupportedAudioFileException("Native library casampledsp not loaded.");
+        if (!file.exists()) throw new FileNotFoundException(file.toString());
+        if (!file.canRead()) throw new IOException("Can't read " + file);
+        final URL url = fileToURL(file);
+        final String key = url.toString();
+        final String validator = toValidator(url);
+        final AudioFileFormat probed = getAudioFileFormat(url);
+        final AudioFileFormat audioFileFormat;
+        try (final FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+             final CAStreamInputStream stream = new CAStreamInputStream(channel, toFileTypeHint(file))) {
+            audioFileFormat = scan(stream, key, probed.getFormat());
+        }
+        // don't remember the scan, if the file changed meanwhile
+        if (validator != null && validator.equals(toValidator(url))) {
+            addToFormatIndex(key, validator, audioFileFormat);
+            CAFormatCache.getDefault().put(key, validator, audioFileFormat);
+        }
+        return audioFileFormat;
+    }
+
+    /**
+     * Determines the exact frame length and duration of the audio data in the given stream
+     * by parsing all its packets without decoding them. The stream is read to its end, but not closed.
+     *
+     * @param stream stream, positioned at the start of the audio file
+     * @return file format with exact frame length and {@code duration} property
+     * @throws UnsupportedAudioFileException if the format is not supported
+     * @throws IOException if something goes wrong
+     * @see #scanAudioFileFormat(File)
+     */
+    public AudioFileFormat scanAudioFileFormat(final InputStream stream) throws UnsupportedAudioFileException, IOException {
+        if (!nativeLibraryLoaded) throw new UnsupportedAudioFileException("Native library casampledsp not loaded.");
+        try (final CAStreamInputStream scanStream = new CAStreamInputStream(stream, 0)) {
+            return scan(scanStream, null, null);
+        }
+    }
+
+    /**
+     * Scans the given stream.
+     *
+     * @param stream stream, positioned at the start of the audio file
+     * @param url url or {@code null}
+     * @param probedFormat probed format to keep, or {@code null} to use the format seen by the parser
+     * @return file format with exact frame length and {@code duration} property
+     */
+    private static AudioFileFormat scan(final CAStreamInputStream stream, final String url,
+                                        final AudioFormat probedFormat) throws UnsupportedAudioFileException, IOException {
+        stream.scan();
+        final AudioFormat format = stream.getSourceFormat();
+        if (format == null) throw new UnsupportedAudioFileException("Failed to find audio format in " + (url == null ? "stream" : url));
+        final long frames = stream.getScannedFrames();
+        final long durationInMicroSeconds = (long)(frames * 1000000.0 / format.getSampleRate() + 0.5);
+        return new CAAudioFileFormat(url, probedFormat == null ? format : probedFormat, stream.getScannedPackets(), durationInMicroSeconds);
+    }
+
     /**
      * Tries to guess the file type hint from the mime content-type.
      *
@@ -199,27 +554,60 @@ public class CAAudioFileReader extends AudioFileReader {
 
     @Override
     public AudioInputStream getAudioInputStream(final InputStream stream) throws UnsupportedAudioFileException, IOException {
-        return getAudioInputStream(stream, CANativePeerInputStream.DEFAULT_BUFFER_SIZE);
+        return getAudioInputStream(stream, AudioSystem.NOT_SPECIFIED);
     }
 
+    /**
+     * Opens an audio stream with the given native buffer size.
+     *
+     * @param stream stream
+     * @param bufferSize native buffer size in bytes or {@link AudioSystem#NOT_SPECIFIED}
+     *                   to derive the size from the audio format
+     * @return audio stream
+     * @throws UnsupportedAudioFileException if the format is not supported
+     * @throws IOException if something goes wrong
+     * @see CANativePeerInputStream#getBufferSize(javax.sound.sampled.AudioFormat)
+     */
     public AudioInputStream getAudioInputStream(final InputStream stream, final int bufferSize) throws UnsupportedAudioFileException, IOException {
         if (!nativeLibraryLoaded) throw new UnsupportedAudioFileException("Native library casampledsp not loaded.");
         final AudioFileFormat fileFormat = getAudioFileFormat(stream);
-        return new CAAudioInputStream(new CAStreamInputStream(stream, 0, bufferSize), fileFormat.getFormat(), fileFormat.getFrameLength());
+        return new CAAudioInputStream(openStream(stream, 0, toBufferSize(bufferSize, fileFormat)), fileFormat.getFormat(), fileFormat.getFrameLength());
     }
 
     @Override
     public AudioInputStream getAudioInputStream(final URL url) throws UnsupportedAudioFileException, IOException {
-        return getAudioInputStream(url, CANativePeerInputStream.DEFAULT_BUFFER_SIZE);
+        return getAudioInputStream(url, AudioSystem.NOT_SPECIFIED);
     }
 
+    /**
+     * Opens an audio stream with the given native buffer size.
+     *
+     * @param url url
+     * @param bufferSize native buffer size in bytes or {@link AudioSystem#NOT_SPECIFIED}
+     *                   to derive the size from the audio format
+     * @return audio stream
+     * @throws UnsupportedAudioFileException if the format is not supported
+     * @throws IOException if something goes wrong
+     * @see CANativePeerInputStream#getBufferSize(javax.sound.sampled.AudioFormat)
+     */
     public AudioInputStream getAudioInputStream(final URL url, final int bufferSize) throws UnsupportedAudioFileException, IOException {
         if (!nativeLibraryLoaded) throw new UnsupportedAudioFileException("Native library casampledsp not loaded.");
         final AudioFileFormat fileFormat;
         final CANativePeerInputStream stream;
         if (isFile(url)) {
             fileFormat = getAudioFileFormat(url);
-            stream = new CAURLInputStream(url);
+            stream = new CAURLInputStream(url, toBufferSize(bufferSize, fileFormat));
+        } else if (resumeRetries > 0 && isHttp(url)) {
+            final CAResumableInputStream resumableStream = new CAResumableInputStream(url, connectTimeout, readTimeout, resumeRetries);
+            try {
+                final InputStream rawStream = buffer(resumableStream);
+                final int fileTypeHint = toFileTypeHint(resumableStream.getContentType());
+                fileFormat = getAudioFileFormat(rawStream, fileTypeHint);
+                stream = openStream(rawStream, fileTypeHint, toBufferSize(bufferSize, fileFormat));
+            } catch (final Throwable t) {
+                resumableStream.close();
+                throw t;
+            }
         } else {
             final URLConnection urlConnection = url.openConnection();
             urlConnection.setConnectTimeout(connectTimeout);
@@ -227,22 +615,157 @@ public class CAAudioFileReader extends AudioFileReader {
             final InputStream rawStream = buffer(url.openStream());
             final int fileTypeHint = toFileTypeHint(contentType);
             fileFormat = getAudioFileFormat(rawStream, fileTypeHint);
-            stream = new CAStreamInputStream(rawStream, fileTypeHint, bufferSize);
+            stream = openStream(rawStream, fileTypeHint, toBufferSize(bufferSize, fileFormat));
         }
         return new CAAudioInputStream(stream, fileFormat.getFormat(), fileFormat.getFrameLength());
     }
 
+    /**
+     * Opens a live audio stream, e.g. internet radio, optimized for a short time to first audio.
+     * <p>
+     * Unlike {@link #getAudioInputStream(URL, int)}, the format is not probed up front with a separate read,
+     * but taken from the first parsed packets, and the stream starts with a small native buffer, which grows
+     * as needed. When converted to PCM, the first conversion is small, too, and subsequent conversions grow.
+     * <p>
+     * ICY in-band metadata is requested from the server and stripped from the audio data.
+     * Title changes are reported to the given listener.
+     * The returned stream is not seekable and its frame length is {@link AudioSystem#NOT_SPECIFIED}.
+     * Closing it closes the connection.
+     *
+     * @param url url of the live stream
+     * @param listener listener for stream title changes, may be {@code null}
+     * @return audio stream
+     * @throws UnsupportedAudioFileException if the format is not supported
+     * @throws IOException if something goes wrong
+     * @see CAIcyInputStream
+     */
+    public AudioInputStream getLiveAudioInputStream(final URL url, final CAIcyInputStream.Listener listener) throws UnsupportedAudioFileException, IOException {
+        if (!nativeLibraryLoaded) throw new UnsupportedAudioFileException("Native library casampledsp not loaded.");
+        final URLConnection urlConnection = url.openConnection();
+        urlConnection.setConnectTimeout(connectTimeout);
+        urlConnection.setRequestProperty("Icy-MetaData", "1");
+        final InputStream rawStream = urlConnection.getInputStream();
+        final int metaInt = urlConnection.getHeaderFieldInt("icy-metaint", 0);
+        final InputStream audioStream = metaInt > 0 ? new CAIcyInputStream(rawStream, metaInt, listener) : rawStream;
+        CAStreamInputStream stream = null;
+        try {
+            stream = CAStreamInputStream.live(audioStream, toFileTypeHint(urlConnection.getContentType()), LIVE_BUFFER_SIZE);
+            // parse up to the first packets, which stay in the native buffer to be read
+            stream.fillNativeBuffer();
+            final AudioFormat format = stream.getSourceFormat();
+            if (format == null) throw new UnsupportedAudioFileException("Failed to find audio format in live stream " + url);
+            return new CAAudioInputStream(stream, format, AudioSystem.NOT_SPECIFIED);
+        } catch (final Throwable t) {
+            if (stream != null) stream.close();
+            else audioStream.close();
+            throw t;
+        }
+    }
+
+    /**
+     * Opens an audio stream for a file that is still being written, e.g. by a recorder.
+     * At the current end of the file, the stream waits for the file to grow and continues,
+     * until the file has not grown for {@code idleTimeout}.
+     * The returned stream's frame length is {@link AudioSystem#NOT_SPECIFIED}.
+     * Closing it closes the file.
+     *
+     * @param file file
+     * @param idleTimeout time to wait for the file to grow, before the stream ends
+     * @param timeUnit unit of {@code idleTimeout}
+     * @return audio stream
+     * @throws UnsupportedAudioFileException if the format is not supported
+     * @throws IOException if something goes wrong
+     * @see CAStreamInputStream#follow(FileChannel, int, int, long, TimeUnit)
+     */
+    public AudioInputStream getFollowingAudioInputStream(final File file, final long idleTimeout, final TimeUnit timeUnit) throws UnsupportedAudioFileException, IOException {
+        if (!nativeLibraryLoaded) throw new UnsupportedAudioFileException("Native library casampledsp not loaded.");
+        if (!file.exists()) throw new FileNotFoundException(file.toString());
+        if (!file.canRead()) throw new IOException("Can't read " + file);
+        final FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        CAStreamInputStream stream = null;
+        try {
+            stream = CAStreamInputStream.follow(channel, toFileTypeHint(file), toFollowingBufferSize(file), idleTimeout, timeUnit);
+            stream.closeSource();
+            // parse up to the first packets, which stay in the native buffer to be read
+            stream.fillNativeBuffer();
+            final AudioFormat format = stream.getSourceFormat();
+            if (format == null) throw new UnsupportedAudioFileException("Failed to find audio format in " + file);
+            return new CAAudioInputStream(stream, format, AudioSystem.NOT_SPECIFIED);
+        } catch (final Throwable t) {
+            if (stream != null) stream.close();
+            else channel.close();
+            throw t;
+        }
+    }
+
     @Override
     public AudioInputStream getAudioInputStream(final File file) throws UnsupportedAudioFileException, IOException {
-        return getAudioInputStream(file, CANativePeerInputStream.DEFAULT_BUFFER_SIZE);
+        return getAudioInputStream(file, AudioSystem.NOT_SPECIFIED);
     }
 
+    /**
+     * Opens an audio stream with the given native buffer size.
+     *
+     * @param file file
+     * @param bufferSize native buffer size in bytes or {@link AudioSystem#NOT_SPECIFIED}
+     *                   to derive the size from the audio format
+     * @return audio stream
+     * @throws UnsupportedAudioFileException if the format is not supported
+     * @throws IOException if something goes wrong
+     * @see CANativePeerInputStream#getBufferSize(javax.sound.sampled.AudioFormat)
+     */
     public AudioInputStream getAudioInputStream(final File file, final int bufferSize) throws UnsupportedAudioFileException, IOException {
         if (!file.exists()) throw new FileNotFoundException(file.toString());
         if (!file.canRead()) throw new IOException("Can't read " + file);
         return getAudioInputStream(fileToURL(file), bufferSize);
     }
 
+    /**
+     * Opens a native stream for the given input stream, spooled, if {@link #isSpooling()}.
+     *
+     * @param stream stream, positioned at the start of the audio file
+     * @param fileTypeHint file type hint
+     * @param bufferSize buffer size in bytes
+     * @return native stream
+     * @throws UnsupportedAudioFileException if the format is not supported
+     * @throws IOException if something goes wrong
+     */
+    private CAStreamInputStream openStream(final InputStream stream, final int fileTypeHint, final int bufferSize) throws UnsupportedAudioFileException, IOException {
+        return spooling
+            ? CAStreamInputStream.spooled(stream, spoolMemory, fileTypeHint, bufferSize)
+            : new CAStreamInputStream(stream, fileTypeHint, bufferSize);
+    }
+
+    /**
+     * Buffer size suitable for the format of a file that is still being written.
+     * The format is probed without caching or indexing it, because the file is about to change.
+     *
+     * @param file file
+     * @return buffer size in bytes or {@link CANativePeerInputStream#DEFAULT_BUFFER_SIZE},
+     * if the file cannot be probed yet
+     */
+    private int toFollowingBufferSize(final File file) {
+        try {
+            return toBufferSize(AudioSystem.NOT_SPECIFIED, intGetAudioFormat(fileToURL(file).toString()));
+        } catch (final Exception e) {
+            // e.g. the header is not complete yet
+            return CANativePeerInputStream.DEFAULT_BUFFER_SIZE;
+        }
+    }
+
+    /**
+     * Resolves {@link AudioSystem#NOT_SPECIFIED} to a buffer size suitable for the given format.
+     *
+     * @param bufferSize requested buffer size
+     * @param fileFormat probed format
+     * @return buffer size in bytes
+     */
+    private static int toBufferSize(final int bufferSize, final AudioFileFormat fileFormat) {
+        return bufferSize == AudioSystem.NOT_SPECIFIED
+            ? CANativePeerInputStream.getBufferSize(fileFormat.getFormat())
+            : bufferSize;
+    }
+
     /**
      * Wrap inputstream to make sure we can {@link java.io.InputStream#mark(int)}.
      *
@@ -263,6 +786,38 @@ public class CAAudioFileReader extends AudioFileReader {
         return url != null && "file".equals(url.getProtocol());
     }
 
+    /**
+     * Indicates whether the given url is pointing to an http(s) resource.
+     *
+     * @param url url
+     * @return true or false
+     */
+    private static boolean isHttp(final URL url) {
+        return "http".equals(url.getProtocol()) || "https".equals(url.getProtocol());
+    }
+
+    /**
+     * Guesses the file type hint from the file extension.
+     *
+     * @param file file
+     * @return specific hint or {@code 0}, if we don't really know what it is.
+     */
+    private static int toFileTypeHint(final File file) {
+        final String name = file.getName().toLowerCase();
+        final int dot = name.lastIndexOf('.');
+        switch (dot >= 0 ? name.substring(dot + 1) : "") {
+            case "wav": return toEnum("WAVE");
+            case "caf": return toEnum("caff");
+            case "aif":
+            case "aiff": return toEnum("AIFF");
+            case "mp3": return toEnum("MPG3");
+            case "aac": return toEnum("adts");
+            case "m4a":
+            case "mp4": return toEnum("m4af");
+            default: return 0;
+        }
+    }
+
     /**
      * Converts a four char, 'MPG3'-type-enum into an {@code int}.
      *
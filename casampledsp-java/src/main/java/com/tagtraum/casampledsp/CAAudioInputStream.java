@@ -23,9 +23,21 @@ package com.tagtraum.casampledsp;
 import javax.sound.sampled.AudioFormat;
 import javax.sound.sampled.AudioInputStream;
 import javax.sound.sampled.AudioSystem;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Objects;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -35,8 +47,16 @@ import java.util.concurrent.TimeUnit;
  */
 public class CAAudioInputStream extends AudioInputStream {
 
+    /**
+     * Chunk size used by {@link #transferTo(OutputStream)}, if a copy to the heap is unavoidable.
+     */
+    private static final int TRANSFER_CHUNK_SIZE = 8 * 1024;
     private final CANativePeerInputStream nativePeerInputStream;
     private final long caFrameLength;
+    /**
+     * Holds a single frame that straddles two native buffer fills.
+     */
+    private ByteBuffer straddlingFrame;
 
     public CAAudioInputStream(final CANativePeerInputStream nativePeerInputStream, final AudioFormat format, final long frameLength) {
         super(nativePeerInputStream, new AudioFormat(
@@ -50,6 +70,7 @@ public class CAAudioInputStream extends AudioInputStream {
                 createProperties(format.properties())
                 ), getFrameLength(format, frameLength));
         this.nativePeerInputStream = nativePeerInputStream;
+        this.nativePeerInputStream.setBufferFormat(format);
         // Core Audio may give us the correct frameLength, but we don't
         // pass it to AudioInputStream, because of https://bugs.openjdk.java.net/browse/JDK-8279338
         this.caFrameLength = frameLength;
@@ -83,6 +104,563 @@ public class CAAudioInputStream extends AudioInputStream {
         return nativePeerInputStream.pointer;
     }
 
+    /**
+     * Reads whole frames into the given buffer, until either the buffer cannot hold another frame
+     * or the end of the stream is reached.
+     * <p>
+     * Decoded data is moved from the native buffer to {@code dst} without an intermediate
+     * {@code byte[]}. If {@code dst} is a direct buffer, no heap copy takes place at all.
+     * Just like {@link #read(byte[], int, int)}, this method respects the frame length
+     * and advances the frame position.
+     *
+     * @param dst destination buffer
+     * @return number of bytes read, possibly zero, or {@code -1}, if the end of the stream is reached
+     * @throws IOException if something goes wrong
+     */
+    public int read(final ByteBuffer dst) throws IOException {
+        final int frameSize = getFormat().getFrameSize();
+        long maxBytes = dst.remaining();
+        if (frameSize > 0) {
+            maxBytes -= maxBytes % frameSize;
+            if (frameLength != AudioSystem.NOT_SPECIFIED) {
+                if (framePos >= frameLength) return -1;
+                maxBytes = Math.min(maxBytes, (frameLength - framePos) * frameSize);
+            }
+        }
+        if (maxBytes == 0) return 0;
+
+        final int limit = dst.limit();
+        // we cast, because of https://github.com/eclipse/jetty.project/issues/3244
+        ((Buffer)dst).limit(dst.position() + (int)maxBytes);
+        final int bytesRead;
+        try {
+            bytesRead = nativePeerInputStream.read(dst);
+        } finally {
+            ((Buffer)dst).limit(limit);
+        }
+        if (bytesRead > 0 && frameSize > 0) {
+            framePos += bytesRead / frameSize;
+        }
+        return bytesRead;
+    }
+
+    /**
+     * Returns a {@link ReadableByteChannel} view of this stream.
+     * Reading from the channel is equivalent to calling {@link #read(ByteBuffer)},
+     * closing it closes this stream.
+     *
+     * @return channel view
+     */
+    public ReadableByteChannel getChannel() {
+        return new ReadableByteChannel() {
+            @Override
+            public int read(final ByteBuffer dst) throws IOException {
+                if (!isOpen()) throw new ClosedChannelException();
+                return CAAudioInputStream.this.read(dst);
+            }
+
+            @Override
+            public boolean isOpen() {
+                return nativePeerInputStream.isOpen();
+            }
+
+            @Override
+            public void close() throws IOException {
+                CAAudioInputStream.this.close();
+            }
+        };
+    }
+
+    /**
+     * Writes all remaining decoded audio to the given channel.
+     * Data is written straight from the native buffer, which is refilled until
+     * the end of the stream is reached. No intermediate heap buffer is involved.
+     * If the frame size is known, only whole frames are written.
+     *
+     * @param target blocking channel
+     * @return number of bytes written
+     * @throws IOException if something goes wrong
+     */
+    public long transferTo(final WritableByteChannel target) throws IOException {
+        Objects.requireNonNull(target, "target");
+        long transferred = 0;
+        ByteBuffer block;
+        while ((block = nextTransferBlock()) != null) {
+            while (block.hasRemaining()) {
+                transferred += target.write(block);
+            }
+        }
+        return transferred;
+    }
+
+    /**
+     * Writes all remaining decoded audio to the given stream.
+     * For a plain {@link FileOutputStream} this is equivalent to {@link #transferTo(WritableByteChannel)}
+     * with its channel. For other streams, data is copied from the native buffer in chunks.
+     * If the frame size is known, only whole frames are written.
+     *
+     * @param out output stream
+     * @return number of bytes written
+     * @throws IOException if something goes wrong
+     */
+    public long transferTo(final OutputStream out) throws IOException {
+        Objects.requireNonNull(out, "out");
+        if (out.getClass() == FileOutputStream.class) {
+            return transferTo(((FileOutputStream) out).getChannel());
+        }
+        final byte[] chunk = new byte[TRANSFER_CHUNK_SIZE];
+        long transferred = 0;
+        ByteBuffer block;
+        while ((block = nextTransferBlock()) != null) {
+            while (block.hasRemaining()) {
+                final int length = Math.min(chunk.length, block.remaining());
+                block.get(chunk, 0, length);
+                out.write(chunk, 0, length);
+                transferred += length;
+            }
+        }
+        return transferred;
+    }
+
+    /**
+     * Returns the next block of decoded data for {@link #transferTo(WritableByteChannel)}.
+     *
+     * @return block of whole frames (if the frame size is known) or {@code null}, if the end of the stream is reached
+     * @throws IOException if something goes wrong
+     */
+    private ByteBuffer nextTransferBlock() throws IOException {
+        if (getFormat().getFrameSize() > 0) {
+            return readBlock(Integer.MAX_VALUE);
+        }
+        final ByteBuffer buffer = nativePeerInputStream.readBuffer();
+        if (buffer.hasRemaining()) return buffer;
+        return nativePeerInputStream.refill() ? nativePeerInputStream.readBuffer() : null;
+    }
+
+    /**
+     * Reads up to {@code maxFrames} whole frames into the given buffer.
+     * Unlike {@link #read(ByteBuffer)}, this never transfers a partial frame, not even at the
+     * end of the stream. Frames that straddle two native buffer fills are carried over internally.
+     *
+     * @param dst destination buffer
+     * @param maxFrames max number of frames to read
+     * @return number of frames read, possibly zero, if {@code dst} cannot hold a single frame,
+     * or {@code -1}, if the end of the stream is reached
+     * @throws UnsupportedOperationException if the frame size is not known
+     * @throws IOException if something goes wrong
+     */
+    public int readFrames(final ByteBuffer dst, final int maxFrames) throws IOException {
+        if (maxFrames < 0) throw new IllegalArgumentException("Max frames must be greater than or equal to 0: " + maxFrames);
+        final int frameSize = getFrameSize();
+        final int frames = Math.min(maxFrames, dst.remaining() / frameSize);
+        if (frames == 0) return 0;
+        int framesRead = 0;
+        while (framesRead < frames) {
+            final ByteBuffer block = readBlock(frames - framesRead);
+            if (block == null) break;
+            framesRead += block.remaining() / frameSize;
+            dst.put(block);
+        }
+        return framesRead == 0 ? -1 : framesRead;
+    }
+
+    /**
+     * Reads up to {@code maxFrames} whole frames as interleaved samples normalized to {@code [-1, 1)}.
+     * Supported are 8, 16, 24 and 32 bit signed PCM, 8 bit unsigned PCM and 32 bit float PCM.
+     * Samples are converted straight from the native buffer, without intermediate {@code byte[]}.
+     *
+     * @param dst destination array
+     * @param offset offset into {@code dst}
+     * @param maxFrames max number of frames to read
+     * @return number of frames read, possibly zero, if {@code dst} cannot hold a single frame,
+     * or {@code -1}, if the end of the stream is reached
+     * @throws UnsupportedOperationException if the sample format is not supported
+     * @throws IOException if something goes wrong
+     */
+    public int readFrames(final float[] dst, final int offset, final int maxFrames) throws IOException {
+        if (maxFrames < 0) throw new IllegalArgumentException("Max frames must be greater than or equal to 0: " + maxFrames);
+        if (offset < 0 || offset > dst.length) throw new IllegalArgumentException("Offset must be between 0 and " + dst.length + ": " + offset);
+        final SampleDecoder decoder = getSampleDecoder();
+        final int channels = getFormat().getChannels();
+        final int frames = Math.min(maxFrames, (dst.length - offset) / channels);
+        if (frames == 0) return 0;
+        int framesRead = 0;
+        while (framesRead < frames) {
+            final ByteBuffer block = readBlock(frames - framesRead);
+            if (block == null) break;
+            final int samples = block.remaining() / decoder.bytesPerSample;
+            decoder.decode(block, dst, offset + framesRead * channels, samples);
+            framesRead += samples / channels;
+        }
+        return framesRead == 0 ? -1 : framesRead;
+    }
+
+    /**
+     * Reads up to {@code maxFrames} whole frames as planar (deinterleaved) samples normalized to {@code [-1, 1)}.
+     * Channel {@code c} is written to {@code dst[c]}, starting at {@code offset}.
+     * Channels with a {@code null} array are skipped during conversion.
+     *
+     * @param dst destination arrays, one per channel
+     * @param offset offset into each of the arrays
+     * @param maxFrames max number of frames to read
+     * @return number of frames read, possibly zero, or {@code -1}, if the end of the stream is reached
+     * @throws UnsupportedOperationException if the sample format is not supported
+     * @throws IOException if something goes wrong
+     * @see #readFrames(float[], int, int)
+     */
+    public int readPlanarFrames(final float[][] dst, final int offset, final int maxFrames) throws IOException {
+        return readPlanarFrames(dst, offset, maxFrames, -1L);
+    }
+
+    /**
+     * Reads up to {@code maxFrames} whole frames as planar (deinterleaved) samples normalized to {@code [-1, 1)}.
+     * Channel {@code c} is written to {@code dst[c]}, starting at {@code offset}, if bit {@code c}
+     * of {@code channelMask} is set and {@code dst[c]} is not {@code null}.
+     * All other channels are skipped during conversion.
+     *
+     * @param dst destination arrays, one per channel
+     * @param offset offset into each of the arrays
+     * @param maxFrames max number of frames to read
+     * @param channelMask bit mask of channels to convert, {@code -1L} for all channels
+     * @return number of frames read, possibly zero, or {@code -1}, if the end of the stream is reached
+     * @throws UnsupportedOperationException if the sample format is not supported
+     * @throws IOException if something goes wrong
+     */
+    public int readPlanarFrames(final float[][] dst, final int offset, final int maxFrames, final long channelMask) throws IOException {
+        if (maxFrames < 0) throw new IllegalArgumentException("Max frames must be greater than or equal to 0: " + maxFrames);
+        if (offset < 0) throw new IllegalArgumentException("Offset must be greater than or equal to 0: " + offset);
+        final SampleDecoder decoder = getSampleDecoder();
+        final int[] channels = toSelectedChannels(dst.length, channelMask);
+        int frames = maxFrames;
+        for (final int channel : channels) {
+            if (dst[channel] == null) continue;
+            if (offset > dst[channel].length) throw new IllegalArgumentException("Offset must be between 0 and " + dst[channel].length + ": " + offset);
+            frames = Math.min(frames, dst[channel].length - offset);
+        }
+        if (frames == 0) return 0;
+        final int frameSize = getFormat().getFrameSize();
+        int framesRead = 0;
+        while (framesRead < frames) {
+            final ByteBuffer block = readBlock(frames - framesRead);
+            if (block == null) break;
+            final int blockFrames = block.remaining() / frameSize;
+            for (final int channel : channels) {
+                final float[] samples = dst[channel];
+                if (samples == null) continue;
+                int index = block.position() + channel * decoder.bytesPerSample;
+                final int end = offset + framesRead + blockFrames;
+                for (int i = offset + framesRead; i < end; i++) {
+                    samples[i] = decoder.get(block, index);
+                    index += frameSize;
+                }
+            }
+            framesRead += blockFrames;
+        }
+        return framesRead == 0 ? -1 : framesRead;
+    }
+
+    /**
+     * Reads up to {@code maxFrames} whole frames as planar (deinterleaved) samples normalized to {@code [-1, 1)}.
+     * Channel {@code c} is written to {@code dst[c]} at its current position, if bit {@code c}
+     * of {@code channelMask} is set and {@code dst[c]} is not {@code null}.
+     * All other channels are skipped during conversion.
+     * The positions of the written buffers are advanced by the number of frames read.
+     *
+     * @param dst destination buffers, one per channel
+     * @param maxFrames max number of frames to read
+     * @param channelMask bit mask of channels to convert, {@code -1L} for all channels
+     * @return number of frames read, possibly zero, or {@code -1}, if the end of the stream is reached
+     * @throws UnsupportedOperationException if the sample format is not supported
+     * @throws IOException if something goes wrong
+     */
+    public int readPlanarFrames(final FloatBuffer[] dst, final int maxFrames, final long channelMask) throws IOException {
+        if (maxFrames < 0) throw new IllegalArgumentException("Max frames must be greater than or equal to 0: " + maxFrames);
+        final SampleDecoder decoder = getSampleDecoder();
+        final int[] channels = toSelectedChannels(dst.length, channelMask);
+        int frames = maxFrames;
+        for (final int channel : channels) {
+            if (dst[channel] != null) frames = Math.min(frames, dst[channel].remaining());
+        }
+        if (frames == 0) return 0;
+        final int frameSize = getFormat().getFrameSize();
+        int framesRead = 0;
+        while (framesRead < frames) {
+            final ByteBuffer block = readBlock(frames - framesRead);
+            if (block == null) break;
+            final int blockFrames = block.remaining() / frameSize;
+            for (final int channel : channels) {
+                final FloatBuffer samples = dst[channel];
+                if (samples == null) continue;
+                int index = block.position() + channel * decoder.bytesPerSample;
+                for (int i=0; i<blockFrames; i++) {
+                    samples.put(decoder.get(block, index));
+                    index += frameSize;
+                }
+            }
+            framesRead += blockFrames;
+        }
+        return framesRead == 0 ? -1 : framesRead;
+    }
+
+    /**
+     * Returns the indices of the channels selected by the given mask.
+     *
+     * @param destinations number of destination arrays or buffers
+     * @param channelMask bit mask of channels
+     * @return selected channel indices
+     */
+    private int[] toSelectedChannels(final int destinations, final long channelMask) {
+        final int channels = getFormat().getChannels();
+        if (destinations < channels) {
+            throw new IllegalArgumentException("Expected at least " + channels + " destinations, but got " + destinations);
+        }
+        final int[] selected = new int[Math.min(channels, 64)];
+        int count = 0;
+        for (int channel=0; channel<selected.length; channel++) {
+            if ((channelMask & (1L << channel)) != 0) selected[count++] = channel;
+        }
+        final int[] result = new int[count];
+        System.arraycopy(selected, 0, result, 0, count);
+        return result;
+    }
+
+    /**
+     * Returns the next block of decoded 16 bit samples as a view directly over the native buffer.
+     * The view always contains whole frames, i.e. interleaved samples for all channels.
+     * Its byte order is already set according to {@link AudioFormat#isBigEndian()}.
+     * <p>
+     * The returned buffer is only valid until the next read, seek or close operation on this stream.
+     * Growing the native buffer during a later fill invalidates it as well, because the view
+     * keeps referring to the old buffer. After closing, the view keeps its content, but it is
+     * never shared with another stream.
+     *
+     * @return samples or {@code null}, if the end of the stream is reached
+     * @throws UnsupportedOperationException if this stream does not contain 16 bit signed PCM
+     * @throws IOException if something goes wrong
+     */
+    public ShortBuffer readShortBlock() throws IOException {
+        checkSampleFormat(AudioFormat.Encoding.PCM_SIGNED, 16);
+        final ByteBuffer block = readBlock(Integer.MAX_VALUE);
+        return block == null ? null : block.asShortBuffer();
+    }
+
+    /**
+     * Returns the next block of decoded 32 bit integer samples as a view directly over the native buffer.
+     * The view always contains whole frames, i.e. interleaved samples for all channels.
+     * Its byte order is already set according to {@link AudioFormat#isBigEndian()}.
+     * <p>
+     * The returned buffer is only valid until the next read, seek or close operation on this stream.
+     * Growing the native buffer during a later fill invalidates it as well, because the view
+     * keeps referring to the old buffer. After closing, the view keeps its content, but it is
+     * never shared with another stream.
+     *
+     * @return samples or {@code null}, if the end of the stream is reached
+     * @throws UnsupportedOperationException if this stream does not contain 32 bit signed PCM
+     * @throws IOException if something goes wrong
+     */
+    public IntBuffer readIntBlock() throws IOException {
+        checkSampleFormat(AudioFormat.Encoding.PCM_SIGNED, 32);
+        final ByteBuffer block = readBlock(Integer.MAX_VALUE);
+        return block == null ? null : block.asIntBuffer();
+    }
+
+    /**
+     * Returns the next block of decoded 32 bit float samples as a view directly over the native buffer.
+     * The view always contains whole frames, i.e. interleaved samples for all channels.
+     * Its byte order is already set according to {@link AudioFormat#isBigEndian()}.
+     * <p>
+     * The returned buffer is only valid until the next read, seek or close operation on this stream.
+     * Growing the native buffer during a later fill invalidates it as well, because the view
+     * keeps referring to the old buffer. After closing, the view keeps its content, but it is
+     * never shared with another stream.
+     *
+     * @return samples or {@code null}, if the end of the stream is reached
+     * @throws UnsupportedOperationException if this stream does not contain 32 bit float PCM
+     * @throws IOException if something goes wrong
+     */
+    public FloatBuffer readFloatBlock() throws IOException {
+        checkSampleFormat(AudioFormat.Encoding.PCM_FLOAT, 32);
+        final ByteBuffer block = readBlock(Integer.MAX_VALUE);
+        return block == null ? null : block.asFloatBuffer();
+    }
+
+    private void checkSampleFormat(final AudioFormat.Encoding encoding, final int sampleSizeInBits) {
+        final AudioFormat format = getFormat();
+        if (!encoding.toString().equals(format.getEncoding().toString())
+                || format.getSampleSizeInBits() != sampleSizeInBits || format.getFrameSize() <= 0) {
+            throw new UnsupportedOperationException("Expected " + sampleSizeInBits + " bit " + encoding + " samples, but format is " + format);
+        }
+    }
+
+    private int getFrameSize() {
+        final int frameSize = getFormat().getFrameSize();
+        if (frameSize <= 0) throw new UnsupportedOperationException("Frame size is not known for format " + getFormat());
+        return frameSize;
+    }
+
+    /**
+     * Returns the next block of up to {@code maxFrames} whole frames from the native buffer
+     * and advances the stream past it.
+     * Usually this is a slice of the native buffer. Only if a frame straddles two native
+     * buffer fills, its bytes are copied into a separate, single frame buffer.
+     *
+     * @param maxFrames max number of frames, must be positive
+     * @return block with the correct byte order or {@code null}, if the end of the stream is reached
+     * @throws IOException if something goes wrong
+     */
+    private ByteBuffer readBlock(final long maxFrames) throws IOException {
+        final AudioFormat format = getFormat();
+        final int frameSize = getFrameSize();
+        long frames = maxFrames;
+        if (frameLength != AudioSystem.NOT_SPECIFIED) {
+            if (framePos >= frameLength) return null;
+            frames = Math.min(frames, frameLength - framePos);
+        }
+        ByteBuffer buffer = nativePeerInputStream.readBuffer();
+        if (!buffer.hasRemaining()) {
+            if (!nativePeerInputStream.refill()) return null;
+            buffer = nativePeerInputStream.readBuffer();
+        }
+        final ByteBuffer block;
+        if (buffer.remaining() < frameSize) {
+            // the frame straddles two fills, stitch it together
+            if (straddlingFrame == null || straddlingFrame.capacity() != frameSize) {
+                straddlingFrame = ByteBuffer.allocate(frameSize);
+            }
+            // we cast, because of https://github.com/eclipse/jetty.project/issues/3244
+            ((Buffer)straddlingFrame).clear();
+            while (straddlingFrame.hasRemaining()) {
+                if (!nativePeerInputStream.readBuffer().hasRemaining() && !nativePeerInputStream.refill()) {
+                    // incomplete last frame
+                    return null;
+                }
+                nativePeerInputStream.transferTo(straddlingFrame, straddlingFrame.remaining());
+            }
+            ((Buffer)straddlingFrame).flip();
+            block = straddlingFrame;
+            framePos++;
+        } else {
+            frames = Math.min(frames, buffer.remaining() / frameSize);
+            final int length = (int)frames * frameSize;
+            block = buffer.slice();
+            ((Buffer)block).limit(length);
+            ((Buffer)buffer).position(buffer.position() + length);
+            // keep the buffer out of the pool, once this stream is closed
+            nativePeerInputStream.markViewed(buffer);
+            framePos += frames;
+        }
+        return block.order(format.isBigEndian() ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private SampleDecoder getSampleDecoder() {
+        final AudioFormat format = getFormat();
+        final String encoding = format.getEncoding().toString();
+        final int sampleSizeInBits = format.getSampleSizeInBits();
+        final int bytesPerSample = (sampleSizeInBits + 7) / 8;
+        if (format.getChannels() <= 0 || format.getFrameSize() != bytesPerSample * format.getChannels()) {
+            throw new UnsupportedOperationException("Unsupported frame layout: " + format);
+        }
+        if (AudioFormat.Encoding.PCM_FLOAT.toString().equals(encoding) && sampleSizeInBits == 32) {
+            return new SampleDecoder(4) {
+                @Override
+                float get(final ByteBuffer src, final int index) {
+                    return src.getFloat(index);
+                }
+
+                @Override
+                void decode(final ByteBuffer src, final float[] dst, final int offset, final int samples) {
+                    src.asFloatBuffer().get(dst, offset, samples);
+                }
+            };
+        }
+        if (AudioFormat.Encoding.PCM_UNSIGNED.toString().equals(encoding) && sampleSizeInBits == 8) {
+            return new SampleDecoder(1) {
+                @Override
+                float get(final ByteBuffer src, final int index) {
+                    return ((src.get(index) & 0xff) - 128) / 128f;
+                }
+            };
+        }
+        if (AudioFormat.Encoding.PCM_SIGNED.toString().equals(encoding)) {
+            switch (sampleSizeInBits) {
+                case 8:
+                    return new SampleDecoder(1) {
+                        @Override
+                        float get(final ByteBuffer src, final int index) {
+                            return src.get(index) / 128f;
+                        }
+                    };
+                case 16:
+                    return new SampleDecoder(2) {
+                        @Override
+                        float get(final ByteBuffer src, final int index) {
+                            return src.getShort(index) / 32768f;
+                        }
+                    };
+                case 24:
+                    return new SampleDecoder(3) {
+                        @Override
+                        float get(final ByteBuffer src, final int index) {
+                            final int sample;
+                            if (src.order() == ByteOrder.BIG_ENDIAN) {
+                                sample = src.get(index) << 16 | (src.get(index + 1) & 0xff) << 8 | (src.get(index + 2) & 0xff);
+                            } else {
+                                sample = src.get(index + 2) << 16 | (src.get(index + 1) & 0xff) << 8 | (src.get(index) & 0xff);
+                            }
+                            return sample / 8388608f;
+                        }
+                    };
+                case 32:
+                    return new SampleDecoder(4) {
+                        @Override
+                        float get(final ByteBuffer src, final int index) {
+                            return src.getInt(index) / 2147483648f;
+                        }
+                    };
+                default:
+                    break;
+            }
+        }
+        throw new UnsupportedOperationException("Unsupported sample format: " + format);
+    }
+
+    /**
+     * Converts samples from a native buffer block to normalized floats.
+     */
+    private abstract static class SampleDecoder {
+
+        final int bytesPerSample;
+
+        SampleDecoder(final int bytesPerSample) {
+            this.bytesPerSample = bytesPerSample;
+        }
+
+        /**
+         * Converts a single sample without changing the position of {@code src}.
+         *
+         * @param src block with correct byte order
+         * @param index absolute byte index of the sample
+         * @return normalized sample
+         */
+        abstract float get(ByteBuffer src, int index);
+
+        /**
+         * Converts consecutive samples, starting at the position of {@code src}.
+         *
+         * @param src block with correct byte order
+         * @param dst destination array
+         * @param offset offset into {@code dst}
+         * @param samples number of samples to convert
+         */
+        void decode(final ByteBuffer src, final float[] dst, final int offset, final int samples) {
+            int index = src.position();
+            for (int i=0; i<samples; i++) {
+                dst[offset + i] = get(src, index);
+                index += bytesPerSample;
+            }
+        }
+    }
+
     /**
      * Indicates whether this stream is seekable.
      * Typically, stream based streams (as opposed to file-based streams)
@@ -25,7 +25,6 @@ import javax.sound.sampled.UnsupportedAudioFileException;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.nio.Buffer;
-import java.nio.ByteBuffer;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -46,7 +45,16 @@ import java.util.concurrent.TimeUnit;
  */
 public class CACodecInputStream extends CANativePeerInputStream {
 
+    /**
+     * Size of the first fill for live sources, i.e. roughly 20ms of 16 bit stereo audio at 48kHz.
+     */
+    static final int LIVE_FIRST_FILL_SIZE = 4 * 1024;
+
     private final CANativePeerInputStream wrappedStream;
+    /**
+     * Max number of bytes to convert per fill. Doubles after every fill, until it exceeds the buffer's capacity.
+     */
+    private int fillLimit = Integer.MAX_VALUE;
 
     /**
      * Opens a codec stream with the default buffer size given in {@link #DEFAULT_BUFFER_SIZE}.
@@ -66,33 +74,65 @@ public class CACodecInputStream extends CANativePeerInputStream {
      * @param bufferSize buffer size to use when reading
      */
     public CACodecInputStream(final AudioFormat targetFormat, final CAAudioInputStream stream, final int bufferSize) throws IOException, UnsupportedAudioFileException {
-        // make sure we have a supported encoding
-        AudioFormat audioFormat = targetFormat;
-        if (!(targetFormat.getEncoding() instanceof CAAudioFormat.CAEncoding)) {
-            // make sure we hand a CAEncoding to the native code
-            final CAAudioFormat.CAEncoding caEncoding = CAAudioFormat.CAEncoding.getInstance(targetFormat.getEncoding().toString());
-            if (caEncoding == null) {
-                throw new UnsupportedEncodingException("This codec does not support the encoding \"" + targetFormat.getEncoding()
-                        + "\". Supported codecs are: " + CAAudioFormat.CAEncoding.getSupportedEncodings());
+        this(targetFormat, stream.getNativePeerInputStream(), bufferSize);
+    }
+
+    /**
+     * Opens a codec stream for the given native source stream.
+     *
+     * @param targetFormat target format
+     * @param stream native source stream, whose native buffer is read directly
+     * @param bufferSize buffer size to use when reading
+     */
+    CACodecInputStream(final AudioFormat targetFormat, final CANativePeerInputStream stream, final int bufferSize) throws IOException, UnsupportedAudioFileException {
+        super(bufferSize);
+        try {
+            // make sure we have a supported encoding
+            AudioFormat audioFormat = targetFormat;
+            if (!(targetFormat.getEncoding() instanceof CAAudioFormat.CAEncoding)) {
+                // make sure we hand a CAEncoding to the native code
+                final CAAudioFormat.CAEncoding caEncoding = CAAudioFormat.CAEncoding.getInstance(targetFormat.getEncoding().toString());
+                if (caEncoding == null) {
+                    throw new UnsupportedEncodingException("This codec does not support the encoding \"" + targetFormat.getEncoding()
+                            + "\". Supported codecs are: " + CAAudioFormat.CAEncoding.getSupportedEncodings());
+                }
+                audioFormat = new AudioFormat(caEncoding,
+                        targetFormat.getSampleRate(), targetFormat.getSampleSizeInBits(), targetFormat.getChannels(),
+                        targetFormat.getFrameSize(), targetFormat.getFrameRate(), targetFormat.isBigEndian());
             }
-            audioFormat = new AudioFormat(caEncoding,
-                    targetFormat.getSampleRate(), targetFormat.getSampleSizeInBits(), targetFormat.getChannels(),
-                    targetFormat.getFrameSize(), targetFormat.getFrameRate(), targetFormat.isBigEndian());
-        }
 
-        this.nativeBuffer = ByteBuffer.allocateDirect(bufferSize);
-        ((Buffer)this.nativeBuffer).limit(0);
-        this.pointer = open(audioFormat, stream.getNativePeerInputStream(), stream.getNativePeerInputStreamPointer());
-        this.wrappedStream = stream.getNativePeerInputStream();
+            // we read the source's native buffer directly, so it must not be swapped by a prefetcher
+            stream.setNativelyConsumed();
+            this.nativeBuffer = CADirectBufferPool.getDefault().acquire(bufferSize);
+            ((Buffer)this.nativeBuffer).limit(0);
+            this.pointer = open(audioFormat, stream, stream.pointer);
+        } catch (final Throwable t) {
+            abandon();
+            throw t;
+        }
+        track(CACodecInputStream::close);
+        this.wrappedStream = stream;
+        if (stream.isLive()) {
+            // emit the first audio as soon as possible
+            this.fillLimit = LIVE_FIRST_FILL_SIZE;
+        }
     }
 
     @Override
     protected void fillNativeBuffer() throws IOException {
         if (isOpen()) {
-            fillNativeBuffer(pointer);
+            fillNativeBuffer(pointer, fillLimit);
+            if (fillLimit < nativeBuffer.capacity()) {
+                fillLimit = (int)Math.min(Integer.MAX_VALUE, 2L * fillLimit);
+            }
         }
     }
 
+    @Override
+    boolean isLive() {
+        return wrappedStream.isLive();
+    }
+
     @Override
     public boolean isSeekable() {
         return wrappedStream.isSeekable();
@@ -100,18 +140,25 @@ public class CACodecInputStream extends CANativePeerInputStream {
 
     @Override
     public void seek(final long time, final TimeUnit timeUnit) throws UnsupportedOperationException, IOException {
-        this.wrappedStream.seek(time, timeUnit);
-        ((Buffer)this.nativeBuffer).limit(0);
-        if (isOpen()) {
-            reset(pointer);
-        } else {
-            throw new IOException("Stream is already closed");
+        pausePrefetch();
+        try {
+            this.wrappedStream.seek(time, timeUnit);
+            ((Buffer)this.nativeBuffer).limit(0);
+            if (isOpen()) {
+                reset(pointer);
+            } else {
+                throw new IOException("Stream is already closed");
+            }
+        } finally {
+            resumePrefetch();
         }
     }
 
     @Override
     public void close() throws IOException {
         try {
+            // make sure no background fill accesses the wrapped stream, while we close it
+            stopPrefetch();
             if (wrappedStream != null) wrappedStream.close();
         } finally {
             super.close();
@@ -119,10 +166,9 @@ public class CACodecInputStream extends CANativePeerInputStream {
     }
 
     private native void reset(final long pointer) throws IOException;
-    private native void fillNativeBuffer(final long pointer) throws IOException;
+    private native void fillNativeBuffer(final long pointer, final int maxBytes) throws IOException;
     private native long open(final AudioFormat target, final CANativePeerInputStream stream, final long pointer) throws IOException;
-    @Override
-    protected native void close(final long pointer) throws IOException;
+    private static native void close(final long pointer) throws IOException;
 
 
 }
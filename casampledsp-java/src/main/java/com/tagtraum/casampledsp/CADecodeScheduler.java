@@ -0,0 +1,406 @@
+/*
+ * =================================================
+ * Copyright 2026 tagtraum industries incorporated
+ * This file is part of CASampledSP.
+ *
+ * CASampledSP is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * CASampledSP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with CASampledSP; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ * =================================================
+ */
+package com.tagtraum.casampledsp;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.UnsupportedAudioFileException;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Decodes many concurrent {@link Session}s on a fixed number of threads.
+ * <p>
+ * Each session wraps a {@link CAPushDecoder}. Producers {@link Session#push(ByteBuffer) push} compressed
+ * input into a session, e.g. from a non-blocking socket. A session with input is <em>ready</em> and enters
+ * the run queue, unless it is {@link Session#suspend() suspended}, because its consumer cannot keep up.
+ * Worker threads take ready sessions from the run queue and decode one slice of at most
+ * {@link #getSliceBytes()} bytes of PCM each, which is handed to the session's {@link Consumer}.
+ * A session that is still ready after its slice goes to the back of the run queue, so all ready sessions
+ * get their turn (round robin). Sessions that wait for input or are suspended do not occupy a thread.
+ * <p>
+ * By default, the number of worker threads equals the number of available processors.
+ *
+ * @author <a href="mailto:hs@tagtraum.com">Hendrik Schreiber</a>
+ * @see CAPushDecoder
+ */
+public final class CADecodeScheduler implements AutoCloseable {
+
+    private static final Logger LOG = Logger.getLogger(CADecodeScheduler.class.getName());
+    private static final AtomicInteger SCHEDULER_COUNT = new AtomicInteger();
+
+    private final ThreadPoolExecutor executor;
+    private final int sliceBytes;
+    private final Set<Session> sessions = ConcurrentHashMap.newKeySet();
+    private final AtomicLong slices = new AtomicLong();
+    private volatile boolean closed;
+
+    /**
+     * Creates a scheduler with one thread per available processor and slices of 16 kB.
+     */
+    public CADecodeScheduler() {
+        this(Runtime.getRuntime().availableProcessors(), 16 * 1024);
+    }
+
+    /**
+     * Creates a scheduler.
+     *
+     * @param threads number of worker threads
+     * @param sliceBytes max number of PCM bytes decoded for a session per turn
+     */
+    public CADecodeScheduler(final int threads, final int sliceBytes) {
+        if (threads <= 0) throw new IllegalArgumentException("Threads must be positive: " + threads);
+        if (sliceBytes <= 0) throw new IllegalArgumentException("Slice bytes must be positive: " + sliceBytes);
+        this.sliceBytes = sliceBytes;
+        final int schedulerNumber = SCHEDULER_COUNT.incrementAndGet();
+        final AtomicInteger threadCount = new AtomicInteger();
+        // the executor's FIFO queue is the run queue
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), r -> {
+            final Thread thread = new Thread(r, "CASampledSP Decoder-" + schedulerNumber + "-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Opens a new session.
+     *
+     * @param fileTypeHint file type hint, see {@link CAAudioFileReader#toFileTypeHint(String)}, or {@code 0}
+     * @param consumer consumer of the decoded PCM
+     * @return session
+     * @throws IOException if the scheduler is closed or something else goes wrong
+     * @throws UnsupportedAudioFileException if the native parser cannot be opened
+     */
+    public Session open(final int fileTypeHint, final Consumer consumer) throws IOException, UnsupportedAudioFileException {
+        if (consumer == null) throw new NullPointerException("consumer");
+        if (closed) throw new IOException("Scheduler is already closed");
+        final Session session = new Session(this, new CAPushDecoder(fileTypeHint), consumer);
+        sessions.add(session);
+        if (closed) {
+            session.close();
+            throw new IOException("Scheduler is already closed");
+        }
+        return session;
+    }
+
+    /**
+     * Max number of PCM bytes decoded for a session per turn.
+     *
+     * @return bytes
+     */
+    public int getSliceBytes() {
+        return sliceBytes;
+    }
+
+    /**
+     * Number of worker threads.
+     *
+     * @return threads
+     */
+    public int getThreads() {
+        return executor.getCorePoolSize();
+    }
+
+    /**
+     * Number of open sessions.
+     *
+     * @return sessions
+     */
+    public int getSessionCount() {
+        return sessions.size();
+    }
+
+    /**
+     * Number of ready sessions waiting for a worker thread.
+     *
+     * @return sessions
+     */
+    public int getRunQueueLength() {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * Total number of slices decoded so far.
+     *
+     * @return slices
+     */
+    public long getSlices() {
+        return slices.get();
+    }
+
+    /**
+     * Closes all sessions and stops the worker threads.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        for (final Session session : new ArrayList<>(sessions)) {
+            session.close();
+        }
+        executor.shutdown();
+    }
+
+    private void enqueue(final Session session) {
+        try {
+            executor.execute(session::run);
+        } catch (RejectedExecutionException e) {
+            // scheduler was closed
+            session.close();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "CADecodeScheduler{" +
+                "threads=" + getThreads() +
+                ", sessions=" + getSessionCount() +
+                ", runQueue=" + getRunQueueLength() +
+                ", slices=" + getSlices() +
+                ", sliceBytes=" + sliceBytes +
+                '}';
+    }
+
+    /**
+     * Receives the output of a {@link Session}. Called on a worker thread, never concurrently for the same session.
+     */
+    public interface Consumer {
+
+        /**
+         * Called with decoded PCM. The buffer is only valid for the duration of the call.
+         *
+         * @param session session
+         * @param pcm decoded PCM in the format {@link Session#getFormat()}
+         */
+        void decoded(Session session, ByteBuffer pcm);
+
+        /**
+         * Called once all input is decoded, after {@link Session#endOfInput()}.
+         * The session is closed afterwards.
+         *
+         * @param session session
+         */
+        default void ended(final Session session) {
+        }
+
+        /**
+         * Called, if decoding fails. The session is closed afterwards.
+         *
+         * @param session session
+         * @param e exception
+         */
+        default void failed(final Session session, final Exception e) {
+            LOG.log(Level.WARNING, "Failed to decode " + session, e);
+        }
+    }
+
+    /**
+     * Single decoding session of a {@link CADecodeScheduler}.
+     */
+    public static final class Session implements AutoCloseable {
+
+        private final CADecodeScheduler scheduler;
+        private final CAPushDecoder decoder;
+        private final Consumer consumer;
+        /**
+         * Indicates that the session is in the run queue or being decoded.
+         */
+        private boolean scheduled;
+        private boolean suspended;
+        private boolean ended;
+        private boolean closed;
+        /**
+         * Indicates that the last slice filled up, i.e. there may be more output without more input.
+         */
+        private boolean moreOutput;
+
+        private Session(final CADecodeScheduler scheduler, final CAPushDecoder decoder, final Consumer consumer) {
+            this.scheduler = scheduler;
+            this.decoder = decoder;
+            this.consumer = consumer;
+        }
+
+        /**
+         * Queues compressed input for decoding. Never waits for decoding.
+         *
+         * @param input input, whose remaining bytes are copied
+         * @throws IOException if the session is closed or {@link #endOfInput()} was already called
+         * @see CAPushDecoder#push(ByteBuffer)
+         */
+        public void push(final ByteBuffer input) throws IOException {
+            decoder.push(input);
+            schedule();
+        }
+
+        /**
+         * Signals that no more input will be pushed.
+         * Once everything is decoded, {@link Consumer#ended(Session)} is called.
+         */
+        public void endOfInput() {
+            decoder.endOfInput();
+            synchronized (this) {
+                ended = true;
+            }
+            schedule();
+        }
+
+        /**
+         * Stops decoding this session, e.g. because its consumer cannot keep up.
+         * A running slice is completed.
+         */
+        public synchronized void suspend() {
+            suspended = true;
+        }
+
+        /**
+         * Resumes decoding this session after {@link #suspend()}.
+         */
+        public void resume() {
+            synchronized (this) {
+                suspended = false;
+            }
+            schedule();
+        }
+
+        /**
+         * Indicates whether this session is suspended.
+         *
+         * @return true or false
+         */
+        public synchronized boolean isSuspended() {
+            return suspended;
+        }
+
+        /**
+         * Format of the decoded PCM.
+         *
+         * @return format or {@code null}, if not known yet
+         */
+        public AudioFormat getFormat() {
+            return decoder.getFormat();
+        }
+
+        /**
+         * Number of pushed bytes that have not been decoded yet.
+         *
+         * @return bytes
+         */
+        public long getQueuedBytes() {
+            return decoder.getQueuedBytes();
+        }
+
+        /**
+         * Indicates whether this session is closed, either explicitly, or because it ended or failed.
+         *
+         * @return true or false
+         */
+        public synchronized boolean isClosed() {
+            return closed;
+        }
+
+        /**
+         * Closes this session and releases its native resources. Waits for a running slice to complete.
+         */
+        @Override
+        public void close() {
+            synchronized (this) {
+                if (closed) return;
+                closed = true;
+            }
+            scheduler.sessions.remove(this);
+            try {
+                decoder.close();
+            } catch (IOException e) {
+                LOG.log(Level.WARNING, "Failed to close " + this, e);
+            }
+        }
+
+        private boolean isReady() {
+            return !closed && !suspended && (moreOutput || ended || decoder.getQueuedBytes() > 0);
+        }
+
+        private void schedule() {
+            synchronized (this) {
+                if (scheduled || !isReady()) return;
+                scheduled = true;
+            }
+            scheduler.enqueue(this);
+        }
+
+        /**
+         * Decodes one slice.
+         */
+        private void run() {
+            if (isClosed()) return;
+            final ByteBuffer pcm = CADirectBufferPool.getDefault().acquire(scheduler.sliceBytes);
+            try {
+                // we cast, because of https://github.com/eclipse/jetty.project/issues/3244
+                ((Buffer)pcm).limit(scheduler.sliceBytes);
+                final int decoded = decoder.decode(pcm);
+                scheduler.slices.incrementAndGet();
+                if (decoded < 0) {
+                    close();
+                    consumer.ended(this);
+                    return;
+                }
+                synchronized (this) {
+                    moreOutput = decoded == scheduler.sliceBytes;
+                }
+                if (decoded > 0) {
+                    ((Buffer)pcm).flip();
+                    consumer.decoded(this, pcm);
+                }
+            } catch (Exception e) {
+                if (!isClosed()) {
+                    close();
+                    consumer.failed(this, e);
+                }
+                return;
+            } finally {
+                CADirectBufferPool.getDefault().release(pcm);
+            }
+            synchronized (this) {
+                scheduled = false;
+            }
+            schedule();
+        }
+
+        @Override
+        public synchronized String toString() {
+            return "Session{" +
+                    "decoder=" + decoder +
+                    ", scheduled=" + scheduled +
+                    ", suspended=" + suspended +
+                    ", closed=" + closed +
+                    '}';
+        }
+    }
+}
@@ -0,0 +1,224 @@
+/*
+ * =================================================
+ * Copyright 2026 tagtraum industries incorporated
+ * This file is part of CASampledSP.
+ *
+ * CASampledSP is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * CASampledSP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with CASampledSP; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ * =================================================
+ */
+package com.tagtraum.casampledsp;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Thread-safe pool of direct {@link ByteBuffer}s used as native buffers by
+ * {@link CANativePeerInputStream}s.
+ * <p>
+ * Buffers are organized in size classes. Requested sizes are rounded up to the next power of two
+ * (at least {@link #MIN_SIZE_CLASS} bytes), so a stream may receive a buffer with a larger capacity than requested.
+ * Released buffers are kept for reuse as long as the total number of pooled bytes
+ * does not exceed {@link #getMaxPooledBytes()}. The default maximum is 16 MB, but it can be overridden
+ * with the system property {@code CA_BUFFER_POOL_SIZE}. Values are given in kilo bytes (kB), <em>not bytes</em>.
+ * A maximum of {@code 0} effectively disables pooling.
+ * <p>
+ * Dropped buffers are left to the garbage collector, which frees their native memory
+ * once the buffer and all its views are unreachable. They are never freed explicitly,
+ * because views handed out by streams (e.g. by {@link CAAudioInputStream#readShortBlock()})
+ * may still be reachable.
+ *
+ * @author <a href="mailto:hs@tagtraum.com">Hendrik Schreiber</a>
+ */
+public final class CADirectBufferPool {
+
+    /**
+     * Smallest size class in bytes.
+     */
+    public static final int MIN_SIZE_CLASS = 4 * 1024;
+
+    private static final int MAX_SIZE_CLASS = 1 << 30;
+
+    private static final CADirectBufferPool DEFAULT = new CADirectBufferPool(1024L * Long.parseLong(System.getProperty("CA_BUFFER_POOL_SIZE", "16384")));
+
+    private final Map<Integer, ConcurrentLinkedQueue<ByteBuffer>> sizeClasses = new ConcurrentHashMap<>();
+    private final AtomicLong pooledBytes = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong discarded = new AtomicLong();
+    private volatile long maxPooledBytes;
+
+    /**
+     * Creates a new pool.
+     *
+     * @param maxPooledBytes max number of bytes to keep for reuse
+     */
+    public CADirectBufferPool(final long maxPooledBytes) {
+        setMaxPooledBytes(maxPooledBytes);
+    }
+
+    /**
+     * Pool shared by all native peer streams.
+     *
+     * @return default pool
+     */
+    public static CADirectBufferPool getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Returns a cleared direct buffer with at least the given capacity.
+     *
+     * @param size min capacity in bytes
+     * @return direct buffer
+     */
+    public ByteBuffer acquire(final int size) {
+        if (size < 0) throw new IllegalArgumentException("Buffer size must not be negative: " + size);
+        final int sizeClass = toSizeClass(size);
+        if (sizeClass > 0) {
+            final ConcurrentLinkedQueue<ByteBuffer> buffers = sizeClasses.get(sizeClass);
+            final ByteBuffer buffer = buffers == null ? null : buffers.poll();
+            if (buffer != null) {
+                pooledBytes.addAndGet(-sizeClass);
+                hits.incrementAndGet();
+                // we cast, because of https://github.com/eclipse/jetty.project/issues/3244
+                ((Buffer)buffer).clear();
+                return buffer;
+            }
+        }
+        misses.incrementAndGet();
+        return ByteBuffer.allocateDirect(sizeClass > 0 ? sizeClass : size);
+    }
+
+    /**
+     * Hands a buffer back to the pool. The caller must not use the buffer anymore.
+     * Buffers that were not obtained via {@link #acquire(int)} or that would exceed
+     * the max number of pooled bytes are silently dropped.
+     *
+     * @param buffer buffer, may be {@code null}
+     */
+    public void release(final ByteBuffer buffer) {
+        if (buffer == null || !buffer.isDirect()) return;
+        final int capacity = buffer.capacity();
+        if (toSizeClass(capacity) != capacity) {
+            discarded.incrementAndGet();
+            return;
+        }
+        final long max = maxPooledBytes;
+        long pooled;
+        do {
+            pooled = pooledBytes.get();
+            if (pooled + capacity > max) {
+                discarded.incrementAndGet();
+                return;
+            }
+        } while (!pooledBytes.compareAndSet(pooled, pooled + capacity));
+        sizeClasses.computeIfAbsent(capacity, k -> new ConcurrentLinkedQueue<>()).add(buffer);
+    }
+
+    /**
+     * Drops all pooled buffers.
+     */
+    public void clear() {
+        for (final ConcurrentLinkedQueue<ByteBuffer> buffers : sizeClasses.values()) {
+            ByteBuffer buffer;
+            while ((buffer = buffers.poll()) != null) {
+                pooledBytes.addAndGet(-buffer.capacity());
+            }
+        }
+    }
+
+    /**
+     * Max number of bytes kept for reuse.
+     *
+     * @return max bytes
+     */
+    public long getMaxPooledBytes() {
+        return maxPooledBytes;
+    }
+
+    /**
+     * Sets the max number of bytes kept for reuse. Lowering the value does not drop
+     * buffers that are already pooled, call {@link #clear()} for that.
+     *
+     * @param maxPooledBytes max bytes, {@code 0} to disable pooling
+     */
+    public void setMaxPooledBytes(final long maxPooledBytes) {
+        if (maxPooledBytes < 0) throw new IllegalArgumentException("Max pooled bytes must not be negative: " + maxPooledBytes);
+        this.maxPooledBytes = maxPooledBytes;
+    }
+
+    /**
+     * Number of bytes currently held for reuse.
+     *
+     * @return bytes
+     */
+    public long getPooledBytes() {
+        return pooledBytes.get();
+    }
+
+    /**
+     * Number of {@link #acquire(int)} calls served from the pool.
+     *
+     * @return hits
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Number of {@link #acquire(int)} calls that required a new allocation.
+     *
+     * @return misses
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Number of released buffers that were dropped instead of pooled.
+     *
+     * @return discarded buffers
+     */
+    public long getDiscarded() {
+        return discarded.get();
+    }
+
+    /**
+     * Maps a size to its size class.
+     *
+     * @param size size in bytes
+     * @return next power of two, at least {@link #MIN_SIZE_CLASS}, or {@code 0}, if the size is too large to be pooled
+     */
+    static int toSizeClass(final int size) {
+        if (size <= MIN_SIZE_CLASS) return MIN_SIZE_CLASS;
+        if (size > MAX_SIZE_CLASS) return 0;
+        return Integer.highestOneBit(size - 1) << 1;
+    }
+
+    @Override
+    public String toString() {
+        return "CADirectBufferPool{" +
+                "pooledBytes=" + pooledBytes +
+                ", maxPooledBytes=" + maxPooledBytes +
+                ", hits=" + hits +
+                ", misses=" + misses +
+                ", discarded=" + discarded +
+                '}';
+    }
+}
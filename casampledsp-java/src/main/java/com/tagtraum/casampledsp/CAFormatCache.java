@@ -0,0 +1,327 @@
+/*
+ * =================================================
+ * Copyright 2026 tagtraum industries incorporated
+ * This file is part of CASampledSP.
+ *
+ * CASampledSP is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * CASampledSP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with CASampledSP; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ * =================================================
+ */
+package com.tagtraum.casampledsp;
+
+import javax.sound.sampled.AudioFileFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Thread-safe, size-bounded LRU cache for {@link AudioFileFormat}s, used by {@link CAAudioFileReader}.
+ * <p>
+ * Each entry carries a validator, e.g. size and modification time of a file or the {@code ETag} of a
+ * remote resource. A lookup with a different validator counts as a miss and removes the stale entry,
+ * so changed files are probed again.
+ * <p>
+ * To keep probing threads from contending for a single lock, larger caches are split into up to 16 segments
+ * by key hash, each with its own lock and an equal share of the capacity. Each segment evicts its
+ * least recently used entry, once its share is exceeded.
+ * <p>
+ * The capacity of the cache used by {@link CAAudioFileReader} defaults to 10000 entries, but it can be overridden
+ * with the system property {@code CA_FORMAT_CACHE_SIZE}.
+ *
+ * @author <a href="mailto:hs@tagtraum.com">Hendrik Schreiber</a>
+ */
+public final class CAFormatCache {
+
+    private static final int MAX_SEGMENTS = 16;
+    /**
+     * Min number of entries per segment. Smaller caches use fewer segments.
+     */
+    private static final int MIN_SEGMENT_CAPACITY = 64;
+    private static final CAFormatCache DEFAULT = new CAFormatCache(Integer.parseInt(System.getProperty("CA_FORMAT_CACHE_SIZE", "10000")));
+
+    private final Segment[] segments;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+    private volatile int capacity;
+    private volatile int segmentCapacity;
+
+    /**
+     * Creates a new cache.
+     *
+     * @param capacity max number of entries
+     */
+    public CAFormatCache(final int capacity) {
+        final int segmentCount = Integer.highestOneBit(Math.max(1, Math.min(MAX_SEGMENTS, capacity / MIN_SEGMENT_CAPACITY)));
+        this.segments = new Segment[segmentCount];
+        for (int i=0; i<segmentCount; i++) {
+            segments[i] = new Segment();
+        }
+        setCapacity(capacity);
+    }
+
+    /**
+     * Cache shared by all {@link CAAudioFileReader}s.
+     *
+     * @return default cache
+     */
+    public static CAFormatCache getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Looks up a format.
+     *
+     * @param key key, e.g. a URL
+     * @param validator current validator of the resource or {@code null}, if it has none
+     * @return format or {@code null}, if not cached or cached with a different validator
+     */
+    public AudioFileFormat get(final String key, final String validator) {
+        final Segment segment = segmentFor(key);
+        synchronized (segment) {
+            final CachedFormat cached = segment.get(key);
+            if (cached != null) {
+                if (Objects.equals(cached.validator, validator)) {
+                    hits.incrementAndGet();
+                    return cached.format;
+                }
+                segment.remove(key);
+                invalidations.incrementAndGet();
+            }
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Looks up a format that was put no longer than the given time ago, without checking its validator.
+     * This lets callers skip determining the validator of remote resources, as long as an entry is fresh.
+     * Only successful lookups are counted, callers are expected to fall back to {@link #get(String, String)}.
+     *
+     * @param key key, e.g. a URL
+     * @param maxAge max time since the format was put
+     * @param timeUnit unit of {@code maxAge}
+     * @return format or {@code null}, if not cached or not fresh
+     */
+    public AudioFileFormat getIfFresh(final String key, final long maxAge, final TimeUnit timeUnit) {
+        final Segment segment = segmentFor(key);
+        synchronized (segment) {
+            final CachedFormat cached = segment.get(key);
+            if (cached != null && System.nanoTime() - cached.created <= timeUnit.toNanos(maxAge)) {
+                hits.incrementAndGet();
+                return cached.format;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Indicates whether a format is cached for the given key, regardless of its validator.
+     * Does not count as a lookup.
+     *
+     * @param key key
+     * @return true, if cached
+     */
+    public boolean contains(final String key) {
+        final Segment segment = segmentFor(key);
+        synchronized (segment) {
+            return segment.containsKey(key);
+        }
+    }
+
+    /**
+     * Adds or replaces a format.
+     *
+     * @param key key, e.g. a URL
+     * @param validator validator of the resource the format was read from or {@code null}, if it has none
+     * @param format format
+     */
+    public void put(final String key, final String validator, final AudioFileFormat format) {
+        Objects.requireNonNull(format, "format");
+        final Segment segment = segmentFor(key);
+        synchronized (segment) {
+            segment.put(key, new CachedFormat(validator, format));
+        }
+    }
+
+    /**
+     * Removes a format.
+     *
+     * @param key key
+     */
+    public void remove(final String key) {
+        final Segment segment = segmentFor(key);
+        synchronized (segment) {
+            segment.remove(key);
+        }
+    }
+
+    /**
+     * Removes all entries.
+     */
+    public void clear() {
+        for (final Segment segment : segments) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
+    }
+
+    /**
+     * Number of cached entries.
+     *
+     * @return entries
+     */
+    public int size() {
+        int size = 0;
+        for (final Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Max number of entries. As each segment holds an equal share,
+     * this is rounded up to a multiple of the number of segments.
+     *
+     * @return entries
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Sets the max number of entries, evicting entries, if necessary.
+     *
+     * @param capacity entries
+     */
+    public void setCapacity(final int capacity) {
+        if (capacity < 0) throw new IllegalArgumentException("Capacity must not be negative: " + capacity);
+        this.segmentCapacity = (capacity + segments.length - 1) / segments.length;
+        this.capacity = segmentCapacity * segments.length;
+        for (final Segment segment : segments) {
+            synchronized (segment) {
+                segment.trim();
+            }
+        }
+    }
+
+    /**
+     * Number of lookups that found a valid entry.
+     *
+     * @return hits
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Number of lookups that found no entry or an invalid one.
+     *
+     * @return misses
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Number of entries evicted to stay within the capacity.
+     *
+     * @return evictions
+     */
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     * Number of entries removed, because their resource changed.
+     *
+     * @return invalidations
+     */
+    public long getInvalidations() {
+        return invalidations.get();
+    }
+
+    /**
+     * Ratio of hits to lookups.
+     *
+     * @return hit rate between {@code 0} and {@code 1}
+     */
+    public double getHitRate() {
+        final long hits = this.hits.get();
+        final long lookups = hits + misses.get();
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    private Segment segmentFor(final String key) {
+        final int hash = key.hashCode();
+        // spread the higher bits, like HashMap does
+        return segments[(hash ^ (hash >>> 16)) & (segments.length - 1)];
+    }
+
+    @Override
+    public String toString() {
+        return "CAFormatCache{" +
+                "size=" + size() +
+                ", capacity=" + capacity +
+                ", hits=" + hits +
+                ", misses=" + misses +
+                ", evictions=" + evictions +
+                ", invalidations=" + invalidations +
+                '}';
+    }
+
+    private static class CachedFormat {
+        private final String validator;
+        private final AudioFileFormat format;
+        private final long created = System.nanoTime();
+
+        private CachedFormat(final String validator, final AudioFileFormat format) {
+            this.validator = validator;
+            this.format = format;
+        }
+    }
+
+    /**
+     * Access-ordered map, guarded by its own monitor.
+     */
+    @SuppressWarnings("serial")
+    private class Segment extends LinkedHashMap<String, CachedFormat> {
+
+        private Segment() {
+            super(16, 0.75f, true);
+        }
+
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<String, CachedFormat> eldest) {
+            if (size() > segmentCapacity) {
+                evictions.incrementAndGet();
+                return true;
+            }
+            return false;
+        }
+
+        private void trim() {
+            while (size() > segmentCapacity) {
+                remove(keySet().iterator().next());
+                evictions.incrementAndGet();
+            }
+        }
+    }
+}
@@ -113,7 +113,7 @@ public class CAFormatConversionProvider extends FormatConversionProvider {
     public AudioInputStream getAudioInputStream(final AudioFormat targetFormat, final AudioInputStream sourceStream) {
         if (!nativeLibraryLoaded) throw new IllegalArgumentException("Native library casampledsp not loaded.");
         try {
-            return new CAAudioInputStream(new CACodecInputStream(targetFormat, (CAAudioInputStream)sourceStream), targetFormat, AudioSystem.NOT_SPECIFIED);
+            return new CAAudioInputStream(new CACodecInputStream(targetFormat, (CAAudioInputStream)sourceStream, CANativePeerInputStream.getBufferSize(targetFormat)), targetFormat, AudioSystem.NOT_SPECIFIED);
         } catch (Exception e) {
             throw new IllegalArgumentException("Failed to create AudioInputStream with format " + targetFormat + " from " + sourceStream, e);
         }
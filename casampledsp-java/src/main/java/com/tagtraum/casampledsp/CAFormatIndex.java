@@ -0,0 +1,505 @@
+/*
+ * =================================================
+ * Copyright 2026 tagtraum industries incorporated
+ * This file is part of CASampledSP.
+ *
+ * CASampledSP is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * CASampledSP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with CASampledSP; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ * =================================================
+ */
+package com.tagtraum.casampledsp;
+
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.UnsupportedAudioFileException;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * Persistent index of {@link CAAudioFileFormat}s, which lets {@link CAAudioFileReader} skip probing files
+ * that have not changed since the last run of the JVM.
+ * <p>
+ * The index is an append-only file. Each record holds the URL of a file, its validator
+ * (size and modification time) and the fields of its format. Records are checksummed, so that a record
+ * that was only partially written, e.g. because the JVM crashed, is detected and dropped when the index is opened.
+ * Opening reads all records into memory. Later records for the same URL supersede earlier ones. Once the
+ * file consists mostly of superseded records, it is compacted when it is opened.
+ * <p>
+ * Several processes may share an index file. Loading, appending and compaction are serialized with a
+ * {@link FileLock} on a separate lock file next to the index ({@code <index>.lock}), which, unlike the index
+ * itself, is never replaced. Records added by another process are only seen, once the index is opened again.
+ * Compaction merges the records other processes appended before it rewrites the file, and processes that
+ * still have the replaced file open switch to the new one, before they append. Within a JVM, each file
+ * should be opened only once.
+ * <p>
+ * The default index is opened from the file given in the system property {@code CA_FORMAT_INDEX}.
+ * Without this property, there is no default index.
+ *
+ * @author <a href="mailto:hs@tagtraum.com">Hendrik Schreiber</a>
+ * @see CAAudioFileReader#setFormatIndex(CAFormatIndex)
+ */
+public final class CAFormatIndex implements AutoCloseable {
+
+    private static final Logger LOG = Logger.getLogger(CAFormatIndex.class.getName());
+    private static final int MAGIC = 0x43414649; // "CAFI"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+    /**
+     * Min number of records, before an index is compacted.
+     */
+    private static final int MIN_COMPACTION_RECORDS = 1024;
+    private static final CAFormatIndex DEFAULT = openDefault();
+
+    private final Path path;
+    private final Map<String, Record> records = new ConcurrentHashMap<>();
+    private FileChannel channel;
+    /**
+     * Identity of the file {@link #channel} refers to, to detect that another process replaced it.
+     */
+    private Object channelFileKey;
+    private FileChannel lockChannel;
+    private long recordCount;
+
+    private CAFormatIndex(final Path path) throws IOException {
+        this.path = path;
+        try {
+            load();
+        } catch (final IOException | RuntimeException e) {
+            close();
+            throw e;
+        }
+        if (recordCount >= MIN_COMPACTION_RECORDS && recordCount > 2L * records.size()) {
+            try {
+                compact();
+            } catch (IOException e) {
+                // the index is still usable, just larger than necessary
+                LOG.log(Level.WARNING, "Failed to compact format index " + path, e);
+            }
+        }
+    }
+
+    /**
+     * Opens the index stored in the given file, creating the file, if it does not exist yet.
+     *
+     * @param path index file
+     * @return index
+     * @throws IOException if the file cannot be read or is not an index
+     */
+    public static CAFormatIndex open(final Path path) throws IOException {
+        return new CAFormatIndex(Objects.requireNonNull(path, "path"));
+    }
+
+    /**
+     * Index given by the system property {@code CA_FORMAT_INDEX}.
+     *
+     * @return default index or {@code null}, if none is configured or it cannot be opened
+     */
+    public static CAFormatIndex getDefault() {
+        return DEFAULT;
+    }
+
+    private static CAFormatIndex openDefault() {
+        final String file = System.getProperty("CA_FORMAT_INDEX");
+        if (file == null || file.isEmpty()) return null;
+        try {
+            return open(Paths.get(file));
+        } catch (IOException | RuntimeException e) {
+            LOG.log(Level.WARNING, "Failed to open format index " + file, e);
+            return null;
+        }
+    }
+
+    private void load() throws IOException {
+        lockChannel = FileChannel.open(path.resolveSibling(path.getFileName() + ".lock"),
+            StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        // don't mistake a record another process is appending right now for an incomplete one
+        final FileLock lock = lock();
+        try {
+            openChannel();
+            loadRecords();
+        } finally {
+            lock.release();
+        }
+    }
+
+    /**
+     * Opens the index file. Must be called while holding the {@link #lock()}.
+     *
+     * @throws IOException if the file cannot be opened
+     */
+    private void openChannel() throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        channelFileKey = fileKey();
+    }
+
+    /**
+     * Switches to the current index file, if another process compacted the index, i.e. replaced the file.
+     * Must be called while holding the {@link #lock()}.
+     *
+     * @throws IOException if the file cannot be opened
+     */
+    private void reopenIfReplaced() throws IOException {
+        final Object fileKey = fileKey();
+        // without file keys, we cannot tell
+        if (fileKey == null || fileKey.equals(channelFileKey)) return;
+        reopenChannel();
+    }
+
+    private void reopenChannel() throws IOException {
+        final FileChannel old = channel;
+        channel = null;
+        old.close();
+        openChannel();
+    }
+
+    private Object fileKey() throws IOException {
+        return Files.readAttributes(path, BasicFileAttributes.class).fileKey();
+    }
+
+    private void loadRecords() throws IOException {
+        if (channel.size() == 0) {
+            final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putInt(VERSION);
+            // we cast, because of https://github.com/eclipse/jetty.project/issues/3244
+            ((Buffer)header).flip();
+            write(header, 0);
+            return;
+        }
+        // buffered, so that small reads are cheap
+        final DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel.position(0)), 64 * 1024));
+        if (in.readInt() != MAGIC) throw new IOException("Not a format index: " + path);
+        final int version = in.readInt();
+        if (version != VERSION) throw new IOException("Unsupported format index version " + version + ": " + path);
+        long validEnd = HEADER_SIZE;
+        final CRC32 crc = new CRC32();
+        try {
+            while (true) {
+                final int length = in.readInt();
+                if (length <= 0 || length > 64 * 1024) break;
+                final byte[] data = new byte[length];
+                in.readFully(data);
+                final long checksum = in.readInt() & 0xFFFFFFFFL;
+                crc.reset();
+                crc.update(data, 0, length);
+                if (crc.getValue() != checksum) break;
+                final Record record = new Record(new DataInputStream(new ByteArrayInputStream(data)));
+                records.put(record.url, record);
+                recordCount++;
+                validEnd += 4 + length + 4;
+            }
+        } catch (EOFException e) {
+            // partially written record at the end
+        }
+        if (validEnd < channel.size()) {
+            LOG.warning("Dropping " + (channel.size() - validEnd) + " bytes of incomplete records from format index " + path);
+            channel.truncate(validEnd);
+        }
+        channel.position(validEnd);
+    }
+
+    /**
+     * Looks up the format of a file.
+     *
+     * @param url file URL
+     * @param validator current validator of the file, i.e. its size and modification time
+     * @return format or {@code null}, if the file is not indexed or it changed since it was indexed
+     */
+    public AudioFileFormat get(final String url, final String validator) {
+        final Record record = records.get(url);
+        if (record == null || !record.validator.equals(validator)) return null;
+        try {
+            return record.toAudioFileFormat();
+        } catch (UnsupportedAudioFileException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Adds the format of a file to the index. Formats that are not {@link CAAudioFileFormat}s,
+     * formats without validator and formats that are already indexed with the same validator are ignored.
+     *
+     * @param url file URL
+     * @param validator validator of the file the format was read from, i.e. its size and modification time
+     * @param fileFormat format
+     * @throws IOException if the index cannot be written
+     */
+    public void put(final String url, final String validator, final AudioFileFormat fileFormat) throws IOException {
+        if (validator == null || !(fileFormat instanceof CAAudioFileFormat)) return;
+        if (!(fileFormat.getFormat().getEncoding() instanceof CAAudioFormat.CAEncoding)) return;
+        final Record record = new Record(url, validator, fileFormat);
+        if (record.equals(records.get(url))) return;
+        final ByteBuffer buffer = record.toByteBuffer();
+        synchronized (this) {
+            if (channel == null) throw new IOException("Format index is already closed: " + path);
+            // other processes may append to the same file or replace it
+            final FileLock lock = lock();
+            try {
+                reopenIfReplaced();
+                write(buffer, channel.size());
+            } finally {
+                lock.release();
+            }
+            records.put(url, record);
+            recordCount++;
+        }
+    }
+
+    /**
+     * Number of indexed files.
+     *
+     * @return files
+     */
+    public int size() {
+        return records.size();
+    }
+
+    /**
+     * File this index is stored in.
+     *
+     * @return path
+     */
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * Rewrites the index file without superseded records.
+     * Records other processes appended since this index was opened are read first, so that they are kept.
+     * If this fails, the index keeps using the old file.
+     *
+     * @throws IOException if something goes wrong
+     */
+    public synchronized void compact() throws IOException {
+        if (channel == null) throw new IOException("Format index is already closed: " + path);
+        final Path compacted = path.resolveSibling(path.getFileName() + ".tmp");
+        final FileLock lock = lock();
+        try {
+            reopenIfReplaced();
+            recordCount = 0;
+            loadRecords();
+            try (final FileChannel out = FileChannel.open(compacted, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putInt(VERSION);
+                // we cast, because of https://github.com/eclipse/jetty.project/issues/3244
+                ((Buffer)header).flip();
+                while (header.hasRemaining()) out.write(header);
+                for (final Record record : records.values()) {
+                    final ByteBuffer buffer = record.toByteBuffer();
+                    while (buffer.hasRemaining()) out.write(buffer);
+                }
+                out.force(true);
+            }
+            Files.move(compacted, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            // the old channel refers to the replaced file now
+            reopenChannel();
+            recordCount = records.size();
+        } catch (final IOException | RuntimeException e) {
+            try {
+                Files.deleteIfExists(compacted);
+            } catch (IOException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
+        } finally {
+            lock.release();
+        }
+    }
+
+    /**
+     * Locks the index against other processes.
+     *
+     * @return lock
+     * @throws IOException if the lock file cannot be locked
+     */
+    private FileLock lock() throws IOException {
+        try {
+            return lockChannel.lock();
+        } catch (OverlappingFileLockException e) {
+            throw new IOException("Format index is opened more than once in this JVM: " + path, e);
+        }
+    }
+
+    private void write(final ByteBuffer buffer, final long position) throws IOException {
+        long offset = position;
+        while (buffer.hasRemaining()) {
+            offset += channel.write(buffer, offset);
+        }
+    }
+
+    /**
+     * Closes the index file. Lookups still work afterwards, but nothing can be added anymore.
+     *
+     * @throws IOException if something goes wrong
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            if (channel != null) {
+                channel.close();
+                channel = null;
+            }
+        } finally {
+            if (lockChannel != null) {
+                lockChannel.close();
+                lockChannel = null;
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "CAFormatIndex{" +
+                "path=" + path +
+                ", files=" + records.size() +
+                '}';
+    }
+
+    /**
+     * Fields of an indexed {@link CAAudioFileFormat}.
+     */
+    private static class Record {
+        private final String url;
+        private final String validator;
+        private final int dataFormat;
+        private final float sampleRate;
+        private final int sampleSize;
+        private final int channels;
+        private final int packetSize;
+        private final float frameRate;
+        private final int frameLength;
+        private final boolean bigEndian;
+        private final long durationInMicroSeconds;
+        private final int bitRate;
+        private final boolean vbr;
+
+        private Record(final String url, final String validator, final AudioFileFormat fileFormat) {
+            final AudioFormat format = fileFormat.getFormat();
+            final Long duration = (Long) fileFormat.getProperty("duration");
+            final Integer bitRate = (Integer) format.getProperty("bitrate");
+            final Boolean vbr = (Boolean) format.getProperty("vbr");
+            this.url = url;
+            this.validator = validator;
+            this.dataFormat = ((CAAudioFormat.CAEncoding) format.getEncoding()).getDataFormat();
+            this.sampleRate = format.getSampleRate();
+            this.sampleSize = format.getSampleSizeInBits();
+            this.channels = format.getChannels();
+            this.packetSize = format.getFrameSize();
+            this.frameRate = format.getFrameRate();
+            this.frameLength = fileFormat.getFrameLength();
+            this.bigEndian = format.isBigEndian();
+            this.durationInMicroSeconds = duration == null ? -1 : duration;
+            this.bitRate = bitRate == null ? -1 : bitRate;
+            this.vbr = vbr != null && vbr;
+        }
+
+        private Record(final DataInputStream in) throws IOException {
+            this.url = in.readUTF();
+            this.validator = in.readUTF();
+            this.dataFormat = in.readInt();
+            this.sampleRate = in.readFloat();
+            this.sampleSize = in.readInt();
+            this.channels = in.readInt();
+            this.packetSize = in.readInt();
+            this.frameRate = in.readFloat();
+            this.frameLength = in.readInt();
+            this.bigEndian = in.readBoolean();
+            this.durationInMicroSeconds = in.readLong();
+            this.bitRate = in.readInt();
+            this.vbr = in.readBoolean();
+        }
+
+        /**
+         * Serializes this record as length, data and CRC32 checksum of the data.
+         *
+         * @return buffer, ready to be written
+         */
+        private ByteBuffer toByteBuffer() throws IOException {
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+            final DataOutputStream out = new DataOutputStream(bytes);
+            out.writeUTF(url);
+            out.writeUTF(validator);
+            out.writeInt(dataFormat);
+            out.writeFloat(sampleRate);
+            out.writeInt(sampleSize);
+            out.writeInt(channels);
+            out.writeInt(packetSize);
+            out.writeFloat(frameRate);
+            out.writeInt(frameLength);
+            out.writeBoolean(bigEndian);
+            out.writeLong(durationInMicroSeconds);
+            out.writeInt(bitRate);
+            out.writeBoolean(vbr);
+            out.flush();
+            final byte[] data = bytes.toByteArray();
+            final CRC32 crc = new CRC32();
+            crc.update(data, 0, data.length);
+            final ByteBuffer buffer = ByteBuffer.allocate(4 + data.length + 4);
+            buffer.putInt(data.length).put(data).putInt((int) crc.getValue());
+            // we cast, because of https://github.com/eclipse/jetty.project/issues/3244
+            ((Buffer)buffer).flip();
+            return buffer;
+        }
+
+        private AudioFileFormat toAudioFileFormat() throws UnsupportedAudioFileException {
+            return new CAAudioFileFormat(url, dataFormat, sampleRate, sampleSize, channels, packetSize,
+                    frameRate, frameLength, bigEndian, durationInMicroSeconds, bitRate, vbr);
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            final Record record = (Record) o;
+            return dataFormat == record.dataFormat
+                    && Float.compare(record.sampleRate, sampleRate) == 0
+                    && sampleSize == record.sampleSize
+                    && channels == record.channels
+                    && packetSize == record.packetSize
+                    && Float.compare(record.frameRate, frameRate) == 0
+                    && frameLength == record.frameLength
+                    && bigEndian == record.bigEndian
+                    && durationInMicroSeconds == record.durationInMicroSeconds
+                    && bitRate == record.bitRate
+                    && vbr == record.vbr
+                    && url.equals(record.url)
+                    && validator.equals(record.validator);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(url, validator);
+        }
+    }
+}
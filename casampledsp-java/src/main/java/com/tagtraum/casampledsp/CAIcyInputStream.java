@@ -0,0 +1,182 @@
+/*
+ * =================================================
+ * Copyright 2026 tagtraum industries incorporated
+ * This file is part of CASampledSP.
+ *
+ * CASampledSP is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * CASampledSP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with CASampledSP; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ * =================================================
+ */
+package com.tagtraum.casampledsp;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Strips ICY (SHOUTcast/Icecast) in-band metadata from a live audio stream.
+ * <p>
+ * If a client requests metadata with the HTTP header {@code Icy-MetaData: 1}, the server inserts
+ * a metadata block after every {@code icy-metaint} bytes of audio (as announced in the response header
+ * of the same name). This stream removes those blocks, so that only audio reaches the parser, and reports
+ * changes of the {@code StreamTitle} to a {@link Listener}.
+ *
+ * @author <a href="mailto:hs@tagtraum.com">Hendrik Schreiber</a>
+ * @see CAAudioFileReader#getLiveAudioInputStream(java.net.URL, Listener)
+ */
+public class CAIcyInputStream extends FilterInputStream {
+
+    private static final Pattern FIELD = Pattern.compile("(\\w+)='(.*?)';", Pattern.DOTALL);
+
+    private final int metaInt;
+    private final Listener listener;
+    private final byte[] metadataBuffer = new byte[255 * 16];
+    private int audioBytesLeft;
+    private volatile String streamTitle;
+    private volatile Map<String, String> metadata = Collections.emptyMap();
+
+    /**
+     * Creates a stream.
+     *
+     * @param in stream, positioned right after the HTTP response header
+     * @param metaInt number of audio bytes between metadata blocks, as given by the {@code icy-metaint} header
+     * @param listener listener to notify of title changes, may be {@code null}
+     */
+    public CAIcyInputStream(final InputStream in, final int metaInt, final Listener listener) {
+        super(in);
+        if (metaInt <= 0) throw new IllegalArgumentException("Metadata interval must be positive: " + metaInt);
+        this.metaInt = metaInt;
+        this.listener = listener;
+        this.audioBytesLeft = metaInt;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (audioBytesLeft == 0 && !readMetadata()) return -1;
+        final int b = in.read();
+        if (b >= 0) audioBytesLeft--;
+        return b;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+        if (len == 0) return 0;
+        if (audioBytesLeft == 0 && !readMetadata()) return -1;
+        final int justRead = in.read(b, off, Math.min(len, audioBytesLeft));
+        if (justRead > 0) audioBytesLeft -= justRead;
+        return justRead;
+    }
+
+    @Override
+    public long skip(final long n) throws IOException {
+        if (n <= 0) return 0;
+        if (audioBytesLeft == 0 && !readMetadata()) return 0;
+        final long skipped = in.skip(Math.min(n, audioBytesLeft));
+        if (skipped > 0) audioBytesLeft -= skipped;
+        return skipped;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return Math.min(in.available(), audioBytesLeft);
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public synchronized void mark(final int readlimit) {
+    }
+
+    @Override
+    public synchronized void reset() throws IOException {
+        throw new IOException("mark/reset not supported");
+    }
+
+    /**
+     * Reads and parses the next metadata block.
+     *
+     * @return false, if the end of the stream was reached
+     * @throws IOException if something goes wrong
+     */
+    private boolean readMetadata() throws IOException {
+        final int lengthByte = in.read();
+        if (lengthByte < 0) return false;
+        final int length = lengthByte * 16;
+        int bytesRead = 0;
+        while (bytesRead < length) {
+            final int justRead = in.read(metadataBuffer, bytesRead, length - bytesRead);
+            if (justRead < 0) return false;
+            bytesRead += justRead;
+        }
+        audioBytesLeft = metaInt;
+        // an empty block means "no change"
+        if (length > 0) parseMetadata(new String(metadataBuffer, 0, length, StandardCharsets.UTF_8));
+        return true;
+    }
+
+    private void parseMetadata(final String block) {
+        final Map<String, String> fields = new LinkedHashMap<>();
+        final Matcher matcher = FIELD.matcher(block);
+        while (matcher.find()) {
+            fields.put(matcher.group(1), matcher.group(2));
+        }
+        this.metadata = Collections.unmodifiableMap(fields);
+        final String title = fields.get("StreamTitle");
+        if (title != null && !title.equals(streamTitle)) {
+            this.streamTitle = title;
+            if (listener != null) listener.streamTitleChanged(title, metadata);
+        }
+    }
+
+    /**
+     * Current stream title.
+     *
+     * @return title or {@code null}, if the server has not sent one yet
+     */
+    public String getStreamTitle() {
+        return streamTitle;
+    }
+
+    /**
+     * All fields of the last metadata block, e.g. {@code StreamTitle} and {@code StreamUrl}.
+     *
+     * @return fields
+     */
+    public Map<String, String> getMetadata() {
+        return metadata;
+    }
+
+    /**
+     * Notified when the stream title changes. Called on the thread that reads the audio data.
+     */
+    public interface Listener {
+
+        /**
+         * Called, when the server announces a new stream title, typically "Artist - Title".
+         *
+         * @param title new title
+         * @param metadata all fields of the metadata block
+         */
+        void streamTitleChanged(String title, Map<String, String> metadata);
+    }
+}
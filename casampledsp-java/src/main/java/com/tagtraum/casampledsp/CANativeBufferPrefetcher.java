@@ -0,0 +1,272 @@
+/*
+ * =================================================
+ * Copyright 2026 tagtraum industries incorporated
+ * This file is part of CASampledSP.
+ *
+ * CASampledSP is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * CASampledSP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with CASampledSP; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ * =================================================
+ */
+package com.tagtraum.casampledsp;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fills the native buffers of a {@link CANativePeerInputStream} in a background thread,
+ * while the consumer drains previously filled buffers.
+ * <p>
+ * Because the native code always writes into the stream's {@link CANativePeerInputStream#nativeBuffer}
+ * field, the filler swaps a free buffer into that field before each fill. The consumer never
+ * touches the field, but reads from {@link #current()} instead.
+ *
+ * @author <a href="mailto:hs@tagtraum.com">Hendrik Schreiber</a>
+ * @see CANativePeerInputStream#enablePrefetch(int)
+ */
+final class CANativeBufferPrefetcher {
+
+    private static final ExecutorService EXECUTOR = Executors.newCachedThreadPool(new ThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(final Runnable r) {
+            final Thread thread = new Thread(r, "CASampledSP Prefetcher-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private final CANativePeerInputStream stream;
+    private final ArrayDeque<ByteBuffer> free = new ArrayDeque<>();
+    private final ArrayDeque<ByteBuffer> filled = new ArrayDeque<>();
+    private ByteBuffer current;
+    private boolean filling;
+    private boolean paused;
+    private boolean stopped;
+    private boolean endOfStream;
+    private Throwable failure;
+
+    /**
+     * Creates a prefetcher for the given stream.
+     * Buffered, but not yet consumed data in the stream's native buffer is preserved.
+     *
+     * @param stream stream
+     * @param bufferCount total number of buffers to use, including the stream's current native buffer
+     */
+    CANativeBufferPrefetcher(final CANativePeerInputStream stream, final int bufferCount) {
+        this.stream = stream;
+        final ByteBuffer nativeBuffer = stream.nativeBuffer;
+        if (nativeBuffer.hasRemaining()) {
+            current = nativeBuffer;
+        } else {
+            free.add(nativeBuffer);
+        }
+        for (int i=1; i<bufferCount; i++) {
+            free.add(CADirectBufferPool.getDefault().acquire(nativeBuffer.capacity()));
+        }
+    }
+
+    /**
+     * Starts filling buffers in the background.
+     */
+    void start() {
+        synchronized (this) {
+            schedule();
+        }
+    }
+
+    /**
+     * Buffer the consumer currently reads from.
+     *
+     * @return current buffer, may be {@code null}
+     */
+    synchronized ByteBuffer current() {
+        return current;
+    }
+
+    /**
+     * Hands the current buffer back to the filler and waits for the next filled buffer.
+     *
+     * @return true, if the new current buffer has data, false, if the end of the stream is reached
+     * @throws IOException if filling failed or if we were interrupted while waiting
+     */
+    synchronized boolean next() throws IOException {
+        if (current != null) {
+            free.add(current);
+            current = null;
+        }
+        while (filled.isEmpty() && failure == null && !endOfStream && !stopped) {
+            schedule();
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for decoded audio.");
+            }
+        }
+        if (!filled.isEmpty()) {
+            current = filled.poll();
+            schedule();
+            return true;
+        }
+        if (failure != null) {
+            if (failure instanceof IOException) throw (IOException) failure;
+            if (failure instanceof RuntimeException) throw (RuntimeException) failure;
+            if (failure instanceof Error) throw (Error) failure;
+            throw new IOException(failure.toString(), failure);
+        }
+        return false;
+    }
+
+    /**
+     * Number of bytes that can be read without waiting for the filler.
+     *
+     * @return number of bytes
+     */
+    synchronized int available() {
+        int available = current == null ? 0 : current.remaining();
+        for (final ByteBuffer buffer : filled) {
+            available += buffer.remaining();
+        }
+        return available;
+    }
+
+    /**
+     * Stops filling and waits for a fill that may currently be running to finish.
+     * Must be followed by {@link #resume()}, e.g. after a seek.
+     */
+    synchronized void pause() {
+        paused = true;
+        awaitIdle();
+    }
+
+    /**
+     * Discards all buffered data and starts filling again.
+     */
+    synchronized void resume() {
+        if (current != null) {
+            free.add(current);
+            current = null;
+        }
+        free.addAll(filled);
+        filled.clear();
+        endOfStream = false;
+        failure = null;
+        paused = false;
+        schedule();
+    }
+
+    /**
+     * Permanently stops filling and waits for a fill that may currently be running to finish.
+     */
+    synchronized void stop() {
+        stopped = true;
+        notifyAll();
+        awaitIdle();
+    }
+
+    /**
+     * Hands all buffers back to the {@link CADirectBufferPool}.
+     * Must only be called after {@link #stop()}.
+     *
+     * @param viewed buffer a block view may still refer to, it is left to the garbage collector, may be {@code null}
+     */
+    synchronized void releaseBuffers(final ByteBuffer viewed) {
+        if (current != null) {
+            release(current, viewed);
+            current = null;
+        }
+        for (final ByteBuffer buffer : filled) {
+            release(buffer, viewed);
+        }
+        filled.clear();
+        for (final ByteBuffer buffer : free) {
+            release(buffer, viewed);
+        }
+        free.clear();
+    }
+
+    private static void release(final ByteBuffer buffer, final ByteBuffer viewed) {
+        if (buffer != viewed) CADirectBufferPool.getDefault().release(buffer);
+    }
+
+    /**
+     * Waits until no fill is running. Because the native peer must not be used concurrently,
+     * we keep waiting when interrupted and restore the interrupt status afterwards.
+     */
+    private void awaitIdle() {
+        boolean interrupted = false;
+        while (filling) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void schedule() {
+        if (!filling && !paused && !stopped && !endOfStream && failure == null && !free.isEmpty()) {
+            filling = true;
+            EXECUTOR.execute(this::fill);
+        }
+    }
+
+    private void fill() {
+        while (true) {
+            ByteBuffer buffer;
+            synchronized (this) {
+                if (paused || stopped || endOfStream || failure != null || free.isEmpty()) {
+                    filling = false;
+                    notifyAll();
+                    return;
+                }
+                buffer = free.poll();
+            }
+            Throwable exception = null;
+            try {
+                // we cast, because of https://github.com/eclipse/jetty.project/issues/3244
+                ((Buffer)buffer).limit(0);
+                stream.nativeBuffer = buffer;
+                stream.fillNativeBuffer();
+            } catch (Throwable t) {
+                exception = t;
+            }
+            // the stream may have swapped in a larger buffer
+            buffer = stream.nativeBuffer;
+            synchronized (this) {
+                if (exception != null) {
+                    failure = exception;
+                    free.add(buffer);
+                } else if (!buffer.hasRemaining()) {
+                    endOfStream = true;
+                    free.add(buffer);
+                } else {
+                    filled.add(buffer);
+                }
+                notifyAll();
+            }
+        }
+    }
+}
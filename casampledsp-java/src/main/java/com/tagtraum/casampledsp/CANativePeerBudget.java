@@ -0,0 +1,263 @@
+/*
+ * =================================================
+ * Copyright 2026 tagtraum industries incorporated
+ * This file is part of CASampledSP.
+ *
+ * CASampledSP is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * CASampledSP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with CASampledSP; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ * =================================================
+ */
+package com.tagtraum.casampledsp;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Process-wide admission control for {@link CANativePeerInputStream}s.
+ * <p>
+ * Every native peer stream reserves one open peer and the size of its native buffer(s)
+ * before it is opened and returns both, when it is closed (or cleaned up, if it is never closed).
+ * If opening a stream would exceed {@link #getMaxOpenPeers()} or {@link #getMaxBytes()}, the opening thread
+ * waits up to {@link #getTimeout()} ms for other streams to close and then fails with an {@link IOException}.
+ * A timeout of {@code 0} fails fast.
+ * Note that a decoding pipeline created via {@link CAFormatConversionProvider} consists of two native peers.
+ * <p>
+ * By default, no limits are set. The limits of the default budget can be set with the system properties
+ * {@code CA_MAX_OPEN_PEERS}, {@code CA_MAX_DIRECT_MEMORY} (in kilo bytes (kB), <em>not bytes</em>)
+ * and {@code CA_ADMISSION_TIMEOUT} (in ms). A limit of {@code 0} means unlimited.
+ *
+ * @author <a href="mailto:hs@tagtraum.com">Hendrik Schreiber</a>
+ */
+public final class CANativePeerBudget {
+
+    private static final CANativePeerBudget DEFAULT = new CANativePeerBudget(
+            Integer.parseInt(System.getProperty("CA_MAX_OPEN_PEERS", "0")),
+            1024L * Long.parseLong(System.getProperty("CA_MAX_DIRECT_MEMORY", "0")),
+            Long.parseLong(System.getProperty("CA_ADMISSION_TIMEOUT", "0")));
+
+    private int maxOpenPeers;
+    private long maxBytes;
+    private long timeout;
+    private int openPeers;
+    private long reservedBytes;
+    private long rejected;
+
+    /**
+     * Creates a new budget.
+     *
+     * @param maxOpenPeers max number of open native peers, {@code 0} for unlimited
+     * @param maxBytes max number of reserved native buffer bytes, {@code 0} for unlimited
+     * @param timeout max time in ms to wait for admission, {@code 0} to fail fast
+     */
+    public CANativePeerBudget(final int maxOpenPeers, final long maxBytes, final long timeout) {
+        setMaxOpenPeers(maxOpenPeers);
+        setMaxBytes(maxBytes);
+        setTimeout(timeout);
+    }
+
+    /**
+     * Budget shared by all native peer streams.
+     *
+     * @return default budget
+     */
+    public static CANativePeerBudget getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Reserves one open peer and the given number of bytes.
+     * Waits up to {@link #getTimeout()} ms, if the budget is exhausted.
+     * A single peer is always admitted, if no other peer is open, even if it exceeds {@link #getMaxBytes()}.
+     *
+     * @param bytes native buffer bytes
+     * @return permit, to be released once the peer is closed
+     * @throws IOException if the budget is still exhausted after the timeout
+     * @throws InterruptedIOException if the thread is interrupted while waiting
+     */
+    public synchronized Permit acquire(final long bytes) throws IOException {
+        if (bytes < 0) throw new IllegalArgumentException("Bytes must not be negative: " + bytes);
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        while (!admits(bytes)) {
+            final long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                rejected++;
+                throw new IOException("Native peer budget exhausted: " + this + ", requested bytes=" + bytes);
+            }
+            try {
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for native peer budget.");
+            }
+        }
+        openPeers++;
+        reservedBytes += bytes;
+        return new Permit(this, bytes);
+    }
+
+    private boolean admits(final long bytes) {
+        if (openPeers == 0) return true;
+        if (maxOpenPeers > 0 && openPeers >= maxOpenPeers) return false;
+        return maxBytes <= 0 || reservedBytes + bytes <= maxBytes;
+    }
+
+    private synchronized void add(final long bytes) {
+        reservedBytes += bytes;
+        if (bytes < 0) notifyAll();
+    }
+
+    private synchronized void release(final long bytes) {
+        openPeers--;
+        reservedBytes -= bytes;
+        notifyAll();
+    }
+
+    /**
+     * Max number of open native peers.
+     *
+     * @return max peers, {@code 0} for unlimited
+     */
+    public synchronized int getMaxOpenPeers() {
+        return maxOpenPeers;
+    }
+
+    /**
+     * Sets the max number of open native peers.
+     *
+     * @param maxOpenPeers max peers, {@code 0} for unlimited
+     */
+    public synchronized void setMaxOpenPeers(final int maxOpenPeers) {
+        if (maxOpenPeers < 0) throw new IllegalArgumentException("Max open peers must not be negative: " + maxOpenPeers);
+        this.maxOpenPeers = maxOpenPeers;
+        notifyAll();
+    }
+
+    /**
+     * Max number of reserved native buffer bytes.
+     *
+     * @return max bytes, {@code 0} for unlimited
+     */
+    public synchronized long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Sets the max number of reserved native buffer bytes.
+     *
+     * @param maxBytes max bytes, {@code 0} for unlimited
+     */
+    public synchronized void setMaxBytes(final long maxBytes) {
+        if (maxBytes < 0) throw new IllegalArgumentException("Max bytes must not be negative: " + maxBytes);
+        this.maxBytes = maxBytes;
+        notifyAll();
+    }
+
+    /**
+     * Max time to wait for admission.
+     *
+     * @return timeout in ms, {@code 0} to fail fast
+     */
+    public synchronized long getTimeout() {
+        return timeout;
+    }
+
+    /**
+     * Sets the max time to wait for admission.
+     *
+     * @param timeout timeout in ms, {@code 0} to fail fast
+     */
+    public synchronized void setTimeout(final long timeout) {
+        if (timeout < 0) throw new IllegalArgumentException("Timeout must not be negative: " + timeout);
+        this.timeout = timeout;
+    }
+
+    /**
+     * Number of currently open native peers.
+     *
+     * @return open peers
+     */
+    public synchronized int getOpenPeers() {
+        return openPeers;
+    }
+
+    /**
+     * Number of native buffer bytes currently reserved by open peers.
+     * Buffers that grow or are added for prefetching after opening are included,
+     * even if they exceed {@link #getMaxBytes()}.
+     *
+     * @return reserved bytes
+     */
+    public synchronized long getReservedBytes() {
+        return reservedBytes;
+    }
+
+    /**
+     * Number of rejected admissions.
+     *
+     * @return rejections
+     */
+    public synchronized long getRejected() {
+        return rejected;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "CANativePeerBudget{" +
+                "openPeers=" + openPeers +
+                ", maxOpenPeers=" + maxOpenPeers +
+                ", reservedBytes=" + reservedBytes +
+                ", maxBytes=" + maxBytes +
+                ", timeout=" + timeout +
+                ", rejected=" + rejected +
+                '}';
+    }
+
+    /**
+     * Reservation of one open peer and its native buffer bytes.
+     * Does not refer to the stream it was acquired for.
+     */
+    public static final class Permit {
+
+        private final CANativePeerBudget budget;
+        private final AtomicBoolean released = new AtomicBoolean();
+        private long bytes;
+
+        private Permit(final CANativePeerBudget budget, final long bytes) {
+            this.budget = budget;
+            this.bytes = bytes;
+        }
+
+        /**
+         * Adjusts the reserved bytes, e.g. when a buffer grows. Never blocks.
+         *
+         * @param delta bytes to add, may be negative
+         */
+        synchronized void add(final long delta) {
+            if (released.get()) return;
+            bytes += delta;
+            budget.add(delta);
+        }
+
+        /**
+         * Returns the reservation to the budget. Subsequent calls have no effect.
+         */
+        public synchronized void release() {
+            if (released.compareAndSet(false, true)) {
+                budget.release(bytes);
+            }
+        }
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * =================================================
+ * Copyright 2026 tagtraum industries incorporated
+ * This file is part of CASampledSP.
+ *
+ * CASampledSP is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * CASampledSP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with CASampledSP; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ * =================================================
+ */
+package com.tagtraum.casampledsp;
+
+import java.io.IOException;
+import java.lang.ref.PhantomReference;
+import java.lang.ref.ReferenceQueue;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Releases native peers of {@link CANativePeerInputStream}s that became unreachable without
+ * having been closed. This replaces {@code finalize()}, which keeps every stream alive for an
+ * extra GC cycle.
+ * <p>
+ * Works just like {@code java.lang.ref.Cleaner}, but is also available on Java 8:
+ * every registered stream is tracked by a {@link PhantomReference} that does not keep it alive.
+ * A daemon thread disposes the native peers of collected streams.
+ * <p>
+ * Leaked (i.e. never closed) streams are always counted. If leak detection is enabled via
+ * {@link #setLeakDetection(boolean)} or the system property {@code CA_LEAK_DETECTION},
+ * the allocation site of each stream is recorded and logged, when the stream is found to be leaked.
+ *
+ * @author <a href="mailto:hs@tagtraum.com">Hendrik Schreiber</a>
+ */
+public final class CANativePeerCleaner {
+
+    private static final Logger LOG = Logger.getLogger(CANativePeerCleaner.class.getName());
+    private static final ReferenceQueue<Object> QUEUE = new ReferenceQueue<>();
+    private static final Set<Cleanable> CLEANABLES = Collections.newSetFromMap(new ConcurrentHashMap<Cleanable, Boolean>());
+    private static final AtomicLong LEAKS = new AtomicLong();
+    private static volatile boolean leakDetection = Boolean.getBoolean("CA_LEAK_DETECTION");
+
+    static {
+        final Thread reaper = new Thread(CANativePeerCleaner::reap, "CASampledSP Cleaner");
+        reaper.setDaemon(true);
+        reaper.start();
+    }
+
+    private CANativePeerCleaner() {
+    }
+
+    /**
+     * Releases a native peer.
+     */
+    interface Disposer {
+
+        /**
+         * Releases the native peer with the given pointer. Must not refer to the stream object.
+         *
+         * @param pointer pointer to the native peer struct
+         * @throws IOException if something goes wrong
+         */
+        void dispose(long pointer) throws IOException;
+    }
+
+    /**
+     * Registers a stream with its native peer.
+     *
+     * @param stream stream
+     * @param pointer pointer to the stream's native peer
+     * @param disposer releases the native peer, must not refer to {@code stream}
+     * @return cleanable, to be cleaned when the stream is closed
+     */
+    static Cleanable register(final CANativePeerInputStream stream, final long pointer, final Disposer disposer) {
+        final Cleanable cleanable = new Cleanable(stream, pointer, disposer,
+                leakDetection ? new Throwable("Allocation site of " + stream.getClass().getSimpleName()) : null);
+        CLEANABLES.add(cleanable);
+        return cleanable;
+    }
+
+    /**
+     * Enables or disables recording of allocation sites for streams created from now on.
+     *
+     * @param enabled true or false
+     */
+    public static void setLeakDetection(final boolean enabled) {
+        leakDetection = enabled;
+    }
+
+    /**
+     * Indicates whether allocation sites are recorded.
+     *
+     * @return true or false
+     */
+    public static boolean isLeakDetection() {
+        return leakDetection;
+    }
+
+    /**
+     * Number of streams that were garbage collected without having been closed.
+     *
+     * @return number of leaked streams
+     */
+    public static long getLeakCount() {
+        return LEAKS.get();
+    }
+
+    /**
+     * Number of streams whose native peers have not been released yet.
+     *
+     * @return number of open native peers
+     */
+    public static int getOpenCount() {
+        return CLEANABLES.size();
+    }
+
+    private static void reap() {
+        while (true) {
+            try {
+                final Cleanable cleanable = (Cleanable) QUEUE.remove();
+                if (cleanable.isPending()) {
+                    LEAKS.incrementAndGet();
+                    if (cleanable.allocationSite != null) {
+                        LOG.log(Level.WARNING, "Native peer was not closed.", cleanable.allocationSite);
+                    }
+                    cleanable.clean();
+                }
+            } catch (InterruptedException e) {
+                // ignore, we are a daemon
+            } catch (Throwable t) {
+                LOG.log(Level.SEVERE, "Failed to release native peer.", t);
+            }
+        }
+    }
+
+    /**
+     * Releases a native peer exactly once, either explicitly or after its stream was collected.
+     */
+    static final class Cleanable extends PhantomReference<Object> {
+
+        private final long pointer;
+        private final Disposer disposer;
+        private final Throwable allocationSite;
+        private boolean cleaned;
+
+        private Cleanable(final Object referent, final long pointer, final Disposer disposer, final Throwable allocationSite) {
+            super(referent, QUEUE);
+            this.pointer = pointer;
+            this.disposer = disposer;
+            this.allocationSite = allocationSite;
+        }
+
+        private synchronized boolean isPending() {
+            return !cleaned;
+        }
+
+        /**
+         * Releases the native peer, if it has not been released yet.
+         *
+         * @throws IOException if releasing fails
+         */
+        void clean() throws IOException {
+            synchronized (this) {
+                if (cleaned) return;
+                cleaned = true;
+            }
+            CLEANABLES.remove(this);
+            clear();
+            disposer.dispose(pointer);
+        }
+    }
+}
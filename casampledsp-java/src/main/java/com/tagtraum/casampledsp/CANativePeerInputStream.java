@@ -20,10 +20,16 @@
  */
 package com.tagtraum.casampledsp;
 
+import javax.sound.sampled.AudioFormat;
 import javax.sound.sampled.UnsupportedAudioFileException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.Buffer;
 import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -45,29 +51,331 @@ public abstract class CANativePeerInputStream extends InputStream {
      */
     public static int DEFAULT_BUFFER_SIZE = 1024 * Integer.parseInt(System.getProperty("CA_DEFAULT_BUFFER_SIZE", "1024"));
 
+    /**
+     * Default duration of audio (in ms) a native buffer should hold, when its size is derived
+     * from the audio format via {@link #getBufferSize(AudioFormat)}. The default is 250ms, but it
+     * can be overridden with the system property {@code CA_DEFAULT_BUFFER_DURATION}.
+     * A value of {@code 0} or less disables format based sizing in favor of {@link #DEFAULT_BUFFER_SIZE}.
+     */
+    public static int DEFAULT_BUFFER_DURATION = Integer.parseInt(System.getProperty("CA_DEFAULT_BUFFER_DURATION", "250"));
+
+    /**
+     * Smallest buffer size returned by {@link #getBufferSize(AudioFormat, int)}.
+     * Stream parsers deliver packets in batches, which must always fit into the buffer.
+     */
+    static final int MIN_BUFFER_SIZE = 32 * 1024;
+
+    /**
+     * Largest buffer size returned by {@link #getBufferSize(AudioFormat, int)}.
+     */
+    static final int MAX_BUFFER_SIZE = 8 * 1024 * 1024;
+
+    private static final ByteBuffer EMPTY_BUFFER = ByteBuffer.allocate(0);
+
+    /**
+     * Largest native buffer sizes that turned out to be necessary, by format.
+     */
+    private static final Map<String, Integer> BUFFER_HIGH_WATER_MARKS = new ConcurrentHashMap<>();
+
+    /**
+     * Computes a native buffer size that holds {@link #DEFAULT_BUFFER_DURATION} ms of audio in the given format.
+     *
+     * @param format audio format
+     * @return buffer size in bytes
+     * @see #getBufferSize(AudioFormat, int)
+     */
+    public static int getBufferSize(final AudioFormat format) {
+        return getBufferSize(format, DEFAULT_BUFFER_DURATION);
+    }
+
+    /**
+     * Computes a native buffer size that holds the given duration of audio in the given format.
+     * The data rate is derived from frame size and frame rate (PCM), from the bit rate (CBR, or VBR
+     * with some headroom), or, if neither is known, from sample rate and channels, assuming
+     * compressed data never exceeds 16 bit PCM.
+     * The result is always between 32 kB and 8 MB. If the data rate cannot be determined or
+     * the duration is not positive, {@link #DEFAULT_BUFFER_SIZE} is returned.
+     *
+     * @param format audio format
+     * @param millis duration of audio in ms
+     * @return buffer size in bytes
+     */
+    public static int getBufferSize(final AudioFormat format, final int millis) {
+        if (millis <= 0 || format == null) return DEFAULT_BUFFER_SIZE;
+        final double bytesPerSecond = getBytesPerSecond(format);
+        final int size = bytesPerSecond <= 0
+            ? DEFAULT_BUFFER_SIZE
+            : (int)Math.max(MIN_BUFFER_SIZE, Math.min(MAX_BUFFER_SIZE, Math.ceil(bytesPerSecond * millis / 1000.0)));
+        return Math.max(size, getBufferHighWaterMark(format));
+    }
+
+    /**
+     * Largest native buffer size a stream of the given format had to grow to,
+     * because a batch of parsed packets did not fit into its buffer.
+     * {@link #getBufferSize(AudioFormat, int)} never returns less than this.
+     *
+     * @param format audio format
+     * @return buffer size in bytes or {@code 0}, if no stream of this format had to grow so far
+     */
+    public static int getBufferHighWaterMark(final AudioFormat format) {
+        if (format == null) return 0;
+        final Integer highWaterMark = BUFFER_HIGH_WATER_MARKS.get(toBufferFormatKey(format));
+        return highWaterMark == null ? 0 : highWaterMark;
+    }
+
+    private static String toBufferFormatKey(final AudioFormat format) {
+        return format.getEncoding() + "/" + format.getSampleRate() + "/" + format.getSampleSizeInBits()
+            + "/" + format.getChannels() + "/" + format.getFrameSize() + "/" + format.getFrameRate();
+    }
+
+    private static double getBytesPerSecond(final AudioFormat format) {
+        if (format.getFrameSize() > 0 && format.getFrameRate() > 0) {
+            return format.getFrameSize() * (double)format.getFrameRate();
+        }
+        final Object bitRate = format.getProperty("bitrate");
+        if (bitRate instanceof Integer && (Integer) bitRate > 0) {
+            final double bytesPerSecond = (Integer) bitRate / 8.0;
+            // the bit rate of VBR data is just an average, leave room for peaks
+            return Boolean.TRUE.equals(format.getProperty("vbr")) ? 2 * bytesPerSecond : bytesPerSecond;
+        }
+        if (format.getSampleRate() > 0 && format.getChannels() > 0) {
+            final int sampleSizeInBits = format.getSampleSizeInBits() > 0 ? format.getSampleSizeInBits() : 16;
+            return format.getSampleRate() * (double)format.getChannels() * sampleSizeInBits / 8.0;
+        }
+        return -1;
+    }
+
     /**
      * Pointer to the native peer struct.
      */
     protected long pointer;
 
     /**
-     * Native audio buffer.
+     * Native audio buffer. This is the buffer the native code writes to.
+     * Readers should use {@link #readBuffer()}, which differs from this buffer, when prefetching.
      */
     protected ByteBuffer nativeBuffer;
 
+    /**
+     * Background filler, if prefetching is enabled.
+     */
+    private volatile CANativeBufferPrefetcher prefetcher;
+
+    /**
+     * Indicates whether another native peer (i.e. a {@link CACodecInputStream}) consumes
+     * our {@link #nativeBuffer} directly.
+     */
+    private volatile boolean nativelyConsumed;
+
+    /**
+     * Releases the native peer, either on {@link #close()} or once this stream became unreachable.
+     */
+    private CANativePeerCleaner.Cleanable cleanable;
+
+    /**
+     * Reservation with the {@link CANativePeerBudget}, if any.
+     */
+    private CANativePeerBudget.Permit permit;
+
+    /**
+     * Format of the data in {@link #nativeBuffer}, if known. Used to remember buffer sizes.
+     */
+    private volatile AudioFormat bufferFormat;
+    /**
+     * Buffer the last block view was handed out for (see {@link #markViewed(ByteBuffer)}).
+     * It is not handed back to the pool on close, because the caller may still use the view.
+     */
+    private volatile ByteBuffer viewedBuffer;
+
     protected CANativePeerInputStream() throws IOException, UnsupportedAudioFileException {
     }
 
-    @Override
-    public int read() throws IOException {
-        if (!nativeBuffer.hasRemaining()) {
+    /**
+     * Reserves an open peer and the given buffer size with the default {@link CANativePeerBudget},
+     * before the subclass opens its native peer. If the subclass fails to open it, it must call {@link #abandon()}.
+     *
+     * @param bufferSize native buffer size in bytes
+     * @throws IOException if the budget is exhausted
+     */
+    protected CANativePeerInputStream(final int bufferSize) throws IOException {
+        this.permit = CANativePeerBudget.getDefault().acquire(CADirectBufferPool.toSizeClass(bufferSize));
+    }
+
+    /**
+     * Registers the freshly opened native peer {@link #pointer}, so that it is released
+     * even if this stream is never closed. Must be called right after opening the native peer.
+     *
+     * @param disposer releases the native peer, must not refer to this stream
+     */
+    void track(final CANativePeerCleaner.Disposer disposer) {
+        final CANativePeerBudget.Permit p = permit;
+        this.cleanable = CANativePeerCleaner.register(this, pointer, p == null ? disposer : ptr -> {
+            try {
+                disposer.dispose(ptr);
+            } finally {
+                p.release();
+            }
+        });
+    }
+
+    /**
+     * Releases the budget reservation and native buffer of a stream whose native peer could not be opened.
+     */
+    void abandon() {
+        if (permit != null) permit.release();
+        CADirectBufferPool.getDefault().release(nativeBuffer);
+        nativeBuffer = EMPTY_BUFFER;
+    }
+
+    /**
+     * Enables background prefetching with the given number of native buffers.
+     * While the consumer drains one buffer, the next one is filled (i.e. decoded) in a background thread.
+     * <p>
+     * Prefetching cannot be enabled for streams that are the source of a {@link CACodecInputStream},
+     * because the codec reads the source's native buffer directly. Enable prefetching for
+     * the codec stream instead.
+     *
+     * @param bufferCount number of native buffers, must be at least 2
+     * @throws IllegalArgumentException if fewer than 2 buffers are requested
+     * @throws IllegalStateException if prefetching is already enabled or this stream is
+     * consumed by a {@link CACodecInputStream}
+     * @throws IOException if the stream is already closed
+     */
+    public synchronized void enablePrefetch(final int bufferCount) throws IOException {
+        if (bufferCount < 2) throw new IllegalArgumentException("Prefetching requires at least 2 buffers: " + bufferCount);
+        if (prefetcher != null) throw new IllegalStateException("Prefetching is already enabled.");
+        if (nativelyConsumed) throw new IllegalStateException("Cannot prefetch a stream that is the source of a codec stream.");
+        if (!isOpen()) throw new IOException("Stream is already closed.");
+        final CANativeBufferPrefetcher newPrefetcher = new CANativeBufferPrefetcher(this, bufferCount);
+        if (permit != null) permit.add((bufferCount - 1L) * nativeBuffer.capacity());
+        this.prefetcher = newPrefetcher;
+        newPrefetcher.start();
+    }
+
+    /**
+     * Indicates whether background prefetching is enabled.
+     *
+     * @return true or false
+     * @see #enablePrefetch(int)
+     */
+    public boolean isPrefetching() {
+        return prefetcher != null;
+    }
+
+    /**
+     * Marks this stream as source of a {@link CACodecInputStream}.
+     *
+     * @throws IllegalArgumentException if this stream is prefetching
+     */
+    void setNativelyConsumed() {
+        if (prefetcher != null) throw new IllegalArgumentException("Cannot use a prefetching stream as codec source. Enable prefetching for the codec stream instead.");
+        this.nativelyConsumed = true;
+    }
+
+    /**
+     * Buffer to read decoded data from.
+     *
+     * @return {@link #nativeBuffer} or the current prefetched buffer
+     */
+    ByteBuffer readBuffer() {
+        final CANativeBufferPrefetcher p = prefetcher;
+        if (p == null) return nativeBuffer;
+        final ByteBuffer current = p.current();
+        return current == null ? EMPTY_BUFFER : current;
+    }
+
+    /**
+     * Notes that a view of the given buffer was handed out to a caller.
+     *
+     * @param buffer buffer returned by {@link #readBuffer()}
+     */
+    void markViewed(final ByteBuffer buffer) {
+        this.viewedBuffer = buffer;
+    }
+
+    /**
+     * Makes new decoded data available via {@link #readBuffer()}.
+     *
+     * @return true, if new data is available, false if the end of the stream is reached
+     * @throws IOException if something goes wrong
+     */
+    boolean refill() throws IOException {
+        final CANativeBufferPrefetcher p = prefetcher;
+        if (p == null) {
             fillNativeBuffer();
+            return nativeBuffer.hasRemaining();
         }
-        // we're at the end
-        if (!nativeBuffer.hasRemaining()) {
+        return p.next();
+    }
+
+    /**
+     * Indicates whether this stream decodes a live source, for which time to first
+     * audio matters more than the number of native calls.
+     *
+     * @return false, unless the source is live
+     */
+    boolean isLive() {
+        return false;
+    }
+
+    /**
+     * Indicates whether the last {@link #fillNativeBuffer()} produced no data, because the source
+     * has no data right now, but has not reached its end yet. Called from native code by codecs
+     * reading this stream, so that they wait for more input instead of ending.
+     *
+     * @return false, unless the source is non-blocking
+     */
+    boolean isInputPending() {
+        return false;
+    }
+
+    /**
+     * Stops background filling and waits for a running fill to finish.
+     * Must be followed by {@link #resumePrefetch()}.
+     * Does nothing, if prefetching is not enabled.
+     */
+    void pausePrefetch() {
+        final CANativeBufferPrefetcher p = prefetcher;
+        if (p != null) p.pause();
+    }
+
+    /**
+     * Discards all prefetched data and resumes background filling.
+     * Does nothing, if prefetching is not enabled.
+     */
+    void resumePrefetch() {
+        final CANativeBufferPrefetcher p = prefetcher;
+        if (p != null) p.resume();
+    }
+
+    /**
+     * Permanently stops background filling and waits for a running fill to finish.
+     * Does nothing, if prefetching is not enabled.
+     */
+    void stopPrefetch() {
+        final CANativeBufferPrefetcher p = prefetcher;
+        if (p != null) p.stop();
+    }
+
+    /**
+     * Number of decoded bytes that can be read without blocking.
+     *
+     * @return number of bytes
+     */
+    @Override
+    public int available() throws IOException {
+        final CANativeBufferPrefetcher p = prefetcher;
+        if (p != null) return p.available();
+        return nativeBuffer.remaining();
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!readBuffer().hasRemaining() && !refill()) {
+            // we're at the end
             return -1;
         }
-        return nativeBuffer.get() & 0xff;
+        return readBuffer().get() & 0xff;
     }
 
     @Override
@@ -79,27 +387,95 @@ public abstract class CANativePeerInputStream extends InputStream {
 
         int bytesRead = 0;
         while (bytesRead < len) {
-            if (!nativeBuffer.hasRemaining()) {
-                fillNativeBuffer();
-                if (!nativeBuffer.hasRemaining()) {
-                    // nothing more to read
-                    break;
-                }
+            if (!readBuffer().hasRemaining() && !refill()) {
+                // nothing more to read
+                break;
             }
-            final int chunkSize = Math.min(len-bytesRead, nativeBuffer.remaining());
-            nativeBuffer.get(b, off+bytesRead, chunkSize);
+            final ByteBuffer buffer = readBuffer();
+            final int chunkSize = Math.min(len-bytesRead, buffer.remaining());
+            buffer.get(b, off+bytesRead, chunkSize);
             bytesRead += chunkSize;
         }
+        return bytesRead == 0 ? -1 : bytesRead;
+    }
 
-        if (!nativeBuffer.hasRemaining()) {
-            fillNativeBuffer();
-            if (!nativeBuffer.hasRemaining()) {
-                // we're at the end
+    /**
+     * Reads decoded bytes into the given buffer, until either the buffer is full
+     * or the end of the stream is reached.
+     * <p>
+     * Data is transferred straight from the native buffer to {@code dst}, with one
+     * bulk transfer per native buffer fill.
+     * If {@code dst} is a direct buffer, no copy to the Java heap takes place.
+     *
+     * @param dst destination buffer
+     * @return number of bytes read, possibly zero, or {@code -1}, if the end of the stream is reached
+     * @throws IOException if something goes wrong
+     */
+    public int read(final ByteBuffer dst) throws IOException {
+        if (!dst.hasRemaining()) return 0;
+        int bytesRead = 0;
+        while (dst.hasRemaining()) {
+            if (!readBuffer().hasRemaining() && !refill()) {
+                // nothing more to read
+                break;
             }
+            bytesRead += transferTo(dst, dst.remaining());
         }
         return bytesRead == 0 ? -1 : bytesRead;
     }
 
+    /**
+     * Moves up to {@code maxBytes} from {@link #readBuffer()} to {@code dst} in one bulk transfer.
+     *
+     * @param dst destination buffer
+     * @param maxBytes max number of bytes to transfer
+     * @return number of bytes actually transferred
+     */
+    int transferTo(final ByteBuffer dst, final int maxBytes) {
+        final ByteBuffer buffer = readBuffer();
+        final int chunkSize = Math.min(maxBytes, Math.min(dst.remaining(), buffer.remaining()));
+        if (chunkSize == buffer.remaining()) {
+            dst.put(buffer);
+        } else {
+            final int limit = buffer.limit();
+            // we cast, because of https://github.com/eclipse/jetty.project/issues/3244
+            ((Buffer)buffer).limit(buffer.position() + chunkSize);
+            try {
+                dst.put(buffer);
+            } finally {
+                ((Buffer)buffer).limit(limit);
+            }
+        }
+        return chunkSize;
+    }
+
+    /**
+     * Returns a {@link ReadableByteChannel} view of this stream.
+     * Reading from the channel is equivalent to calling {@link #read(ByteBuffer)},
+     * closing it closes this stream.
+     *
+     * @return channel view
+     */
+    public ReadableByteChannel getChannel() {
+        return new ReadableByteChannel() {
+            @Override
+            public int read(final ByteBuffer dst) throws IOException {
+                if (!isOpen()) throw new ClosedChannelException();
+                return CANativePeerInputStream.this.read(dst);
+            }
+
+            @Override
+            public boolean isOpen() {
+                return CANativePeerInputStream.this.isOpen();
+            }
+
+            @Override
+            public void close() throws IOException {
+                CANativePeerInputStream.this.close();
+            }
+        };
+    }
+
     /**
      * @return true or false
      * @see com.tagtraum.casampledsp.CAAudioInputStream#isSeekable()
@@ -123,27 +499,75 @@ public abstract class CANativePeerInputStream extends InputStream {
 
     @Override
     public void close() throws IOException {
+        stopPrefetch();
         if (isOpen()) {
             try {
-                close(pointer);
+                cleanable.clean();
             } finally {
                 pointer = 0;
+                releaseNativeBuffers();
             }
         }
     }
 
-    protected abstract void fillNativeBuffer() throws IOException;
+    /**
+     * Sets the format of the data in the native buffer, so that the size this stream's
+     * buffer had to grow to can be used for later streams of the same format.
+     *
+     * @param format format
+     * @see #getBufferHighWaterMark(AudioFormat)
+     */
+    void setBufferFormat(final AudioFormat format) {
+        this.bufferFormat = format;
+    }
 
-    protected abstract void close(final long pointer) throws IOException;
+    /**
+     * Swaps in a larger native buffer, retaining the pending data, i.e. everything up to the limit.
+     * Called from native code, when a batch of parsed packets does not fit into the remaining capacity.
+     * The buffer at least doubles in size to avoid frequent swaps.
+     * The old buffer is left to the garbage collector rather than returned to the pool.
+     *
+     * @param minCapacity min capacity in bytes
+     */
+    void growNativeBuffer(final int minCapacity) {
+        final ByteBuffer old = nativeBuffer;
+        if (old.capacity() >= minCapacity) return;
+        final CADirectBufferPool pool = CADirectBufferPool.getDefault();
+        final ByteBuffer grown = pool.acquire((int)Math.min(Integer.MAX_VALUE, Math.max(minCapacity, 2L * old.capacity())));
+        final ByteBuffer pending = old.duplicate();
+        // we cast, because of https://github.com/eclipse/jetty.project/issues/3244
+        ((Buffer)pending).position(0);
+        grown.put(pending);
+        ((Buffer)grown).limit(old.limit());
+        ((Buffer)grown).position(old.position());
+        nativeBuffer = grown;
+        // we don't hand the old buffer back to the pool, because block views (see CAAudioInputStream#readBlock(int))
+        // may still refer to it and would then show another stream's data, the garbage collector frees it
+        if (permit != null) permit.add(grown.capacity() - (long)old.capacity());
+        final AudioFormat format = bufferFormat;
+        if (format != null) {
+            BUFFER_HIGH_WATER_MARKS.merge(toBufferFormatKey(format), grown.capacity(), Math::max);
+        }
+    }
 
-    @Override
-    protected void finalize() throws Throwable {
-        try {
-            close();
-        } catch (IOException e) {
-            e.printStackTrace();
+    /**
+     * Hands all native buffers back to the {@link CADirectBufferPool}, except for a buffer a block view
+     * was handed out for. That one is left to the garbage collector, so that another stream cannot
+     * write into it, while the caller still holds the view.
+     * Afterwards, this stream only sees an empty buffer.
+     */
+    private void releaseNativeBuffers() {
+        final CANativeBufferPrefetcher p = prefetcher;
+        final ByteBuffer viewed = viewedBuffer;
+        if (p != null) {
+            p.releaseBuffers(viewed);
+        } else if (nativeBuffer != viewed) {
+            CADirectBufferPool.getDefault().release(nativeBuffer);
         }
-        super.finalize();
+        nativeBuffer = EMPTY_BUFFER;
+        viewedBuffer = null;
     }
 
+    protected abstract void fillNativeBuffer() throws IOException;
+
 }
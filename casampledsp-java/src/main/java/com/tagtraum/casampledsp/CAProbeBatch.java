@@ -0,0 +1,187 @@
+/*
+ * =================================================
+ * Copyright 2026 tagtraum industries incorporated
+ * This file is part of CASampledSP.
+ *
+ * CASampledSP is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * CASampledSP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with CASampledSP; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ * =================================================
+ */
+package com.tagtraum.casampledsp;
+
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.UnsupportedAudioFileException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Probes many files on an {@link Executor}, in an order that keeps disk access local.
+ * <p>
+ * Files are grouped by directory. Each directory's files are sorted by inode, which on most
+ * file systems approximates their order on disk, and split into chunks of {@link #CHUNK_SIZE} files.
+ * Sorting runs on the executor as well, one task per directory.
+ * Chunks are submitted in order and probed sequentially, so an executor with a single thread reads
+ * a spinning disk directory by directory, in on-disk order, while an executor with many threads probes
+ * many chunks in parallel, which is what SSDs need.
+ * As chunks are submitted from the executor's threads, the executor must run tasks in the order they were
+ * submitted, which {@link ForkJoinPool}s only do in async mode.
+ *
+ * @author <a href="mailto:hs@tagtraum.com">Hendrik Schreiber</a>
+ * @see CAAudioFileReader#getAudioFileFormats(Collection)
+ */
+final class CAProbeBatch {
+
+    /**
+     * Max number of files probed sequentially by one task.
+     */
+    static final int CHUNK_SIZE = 32;
+    /**
+     * Default executor. Unlike the {@link ForkJoinPool#commonPool() common pool}, it is in async mode,
+     * so that tasks submitted by its own threads run in FIFO order, not LIFO.
+     */
+    static final ForkJoinPool DEFAULT_EXECUTOR = newExecutor(Runtime.getRuntime().availableProcessors());
+
+    private CAProbeBatch() {
+    }
+
+    /**
+     * Creates a pool suitable for probing, i.e. one that runs tasks in FIFO order.
+     *
+     * @param parallelism number of threads
+     * @return pool in async mode
+     */
+    static ForkJoinPool newExecutor(final int parallelism) {
+        return new ForkJoinPool(parallelism, ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true);
+    }
+
+    /**
+     * Submits probes for all given files. Each file's future completes with its format
+     * or exceptionally, if it could not be probed. Failures do not affect other files.
+     *
+     * @param paths files
+     * @param prober prober for a single file
+     * @param executor executor
+     * @return futures in the order of {@code paths}, without duplicates
+     */
+    static Map<Path, CompletableFuture<AudioFileFormat>> submit(final Collection<Path> paths, final Prober prober, final Executor executor) {
+        final Map<Path, CompletableFuture<AudioFileFormat>> futures = new LinkedHashMap<>();
+        final Map<Path, List<Path>> directories = new TreeMap<>();
+        for (final Path path : paths) {
+            if (futures.putIfAbsent(path, new CompletableFuture<>()) == null) {
+                final Path absolute = path.toAbsolutePath();
+                final Path directory = absolute.getParent() != null ? absolute.getParent() : absolute;
+                directories.computeIfAbsent(directory, d -> new ArrayList<>()).add(path);
+            }
+        }
+        for (final List<Path> files : directories.values()) {
+            // each directory is ordered on the executor, as reading inodes takes a system call per file
+            submit(executor, files, () -> order(files, prober, executor, futures), futures);
+        }
+        return Collections.unmodifiableMap(futures);
+    }
+
+    private static void order(final List<Path> files, final Prober prober, final Executor executor,
+                              final Map<Path, CompletableFuture<AudioFileFormat>> futures) {
+        final List<Ordered> ordered = new ArrayList<>(files.size());
+        for (final Path file : files) {
+            ordered.add(new Ordered(file, inode(file)));
+        }
+        // stable, so files without inode keep their order
+        Collections.sort(ordered, Comparator.comparingLong(o -> o.inode));
+        for (int start = 0; start < ordered.size(); start += CHUNK_SIZE) {
+            final List<Path> chunk = new ArrayList<>(CHUNK_SIZE);
+            for (final Ordered o : ordered.subList(start, Math.min(ordered.size(), start + CHUNK_SIZE))) {
+                chunk.add(o.path);
+            }
+            submit(executor, chunk, () -> probe(chunk, prober, futures), futures);
+        }
+    }
+
+    private static void submit(final Executor executor, final List<Path> files, final Runnable task,
+                               final Map<Path, CompletableFuture<AudioFileFormat>> futures) {
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            for (final Path file : files) {
+                futures.get(file).completeExceptionally(e);
+            }
+        }
+    }
+
+    private static void probe(final List<Path> chunk, final Prober prober, final Map<Path, CompletableFuture<AudioFileFormat>> futures) {
+        for (final Path file : chunk) {
+            final CompletableFuture<AudioFileFormat> future = futures.get(file);
+            try {
+                future.complete(prober.probe(file));
+            } catch (Exception e) {
+                future.completeExceptionally(e);
+            }
+        }
+    }
+
+    /**
+     * Inode of the given file.
+     *
+     * @param path file
+     * @return inode or {@link Long#MAX_VALUE}, if the file system does not have inodes or the file cannot be read
+     */
+    static long inode(final Path path) {
+        try {
+            final Object inode = Files.getAttribute(path, "unix:ino");
+            return inode instanceof Number ? ((Number) inode).longValue() : Long.MAX_VALUE;
+        } catch (IOException | RuntimeException e) {
+            // no unix file system or file does not exist, probing will tell
+            return Long.MAX_VALUE;
+        }
+    }
+
+    /**
+     * Probes a single file.
+     */
+    interface Prober {
+
+        /**
+         * Probes the given file.
+         *
+         * @param path file
+         * @return format
+         * @throws IOException if something goes wrong
+         * @throws UnsupportedAudioFileException if the format is not supported
+         */
+        AudioFileFormat probe(Path path) throws IOException, UnsupportedAudioFileException;
+    }
+
+    private static class Ordered {
+        private final Path path;
+        private final long inode;
+
+        private Ordered(final Path path, final long inode) {
+            this.path = path;
+            this.inode = inode;
+        }
+    }
+}
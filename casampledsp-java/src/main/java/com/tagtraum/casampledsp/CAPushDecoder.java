@@ -0,0 +1,290 @@
+/*
+ * =================================================
+ * Copyright 2026 tagtraum industries incorporated
+ * This file is part of CASampledSP.
+ *
+ * CASampledSP is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * CASampledSP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with CASampledSP; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ * =================================================
+ */
+package com.tagtraum.casampledsp;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.UnsupportedAudioFileException;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Push-mode decoder for compressed audio, e.g. received from a non-blocking socket.
+ * <p>
+ * Instead of pulling data from an {@link java.io.InputStream}, the caller {@link #push(ByteBuffer) pushes}
+ * compressed data as it arrives and {@link #decode(ByteBuffer) decodes} whatever can be decoded from
+ * the data pushed so far. No call ever waits for input: If more input is needed, {@link #decode(ByteBuffer)}
+ * simply returns {@code 0}. Once all input is pushed, call {@link #endOfInput()} to decode the rest.
+ * <pre>
+ * // on data from the socket
+ * decoder.push(input);
+ * while ((bytes = decoder.decode(pcm)) &gt; 0) {
+ *     // consume pcm
+ * }
+ * </pre>
+ * The decoded format is signed PCM with the sample rate and channels of the input and
+ * is known as soon as enough input has been pushed, see {@link #getFormat()}.
+ * Note that opening the native peers is subject to the {@link CANativePeerBudget}.
+ *
+ * @author <a href="mailto:hs@tagtraum.com">Hendrik Schreiber</a>
+ */
+public final class CAPushDecoder implements AutoCloseable {
+
+    /**
+     * Initial buffer size of the parser. Grows, if necessary.
+     */
+    private static final int PARSER_BUFFER_SIZE = 64 * 1024;
+
+    private final InputQueue queue = new InputQueue();
+    private final CAStreamInputStream parser;
+    private final int sampleSizeInBits;
+    private final boolean bigEndian;
+    private CACodecInputStream codec;
+    private AudioFormat format;
+    private volatile boolean closed;
+
+    /**
+     * Creates a decoder that decodes to 16 bit, little endian PCM.
+     *
+     * @param fileTypeHint file type hint, see {@link CAAudioFileReader#toFileTypeHint(String)}, or {@code 0}
+     * @throws IOException if something goes wrong
+     * @throws UnsupportedAudioFileException if the native parser cannot be opened
+     */
+    public CAPushDecoder(final int fileTypeHint) throws IOException, UnsupportedAudioFileException {
+        this(fileTypeHint, 16, false);
+    }
+
+    /**
+     * Creates a decoder.
+     *
+     * @param fileTypeHint file type hint, see {@link CAAudioFileReader#toFileTypeHint(String)}, or {@code 0}
+     * @param sampleSizeInBits sample size of the decoded PCM
+     * @param bigEndian endianness of the decoded PCM
+     * @throws IOException if something goes wrong
+     * @throws UnsupportedAudioFileException if the native parser cannot be opened
+     */
+    public CAPushDecoder(final int fileTypeHint, final int sampleSizeInBits, final boolean bigEndian) throws IOException, UnsupportedAudioFileException {
+        if (sampleSizeInBits <= 0 || sampleSizeInBits % 8 != 0) throw new IllegalArgumentException("Unsupported sample size: " + sampleSizeInBits);
+        this.sampleSizeInBits = sampleSizeInBits;
+        this.bigEndian = bigEndian;
+        this.parser = CAStreamInputStream.nonBlocking(queue, fileTypeHint, PARSER_BUFFER_SIZE);
+    }
+
+    /**
+     * Queues the remaining bytes of the given buffer for decoding. The bytes are copied,
+     * so the buffer may be reused right away. Its position is advanced to its limit.
+     * Does not wait for a running {@link #decode(ByteBuffer)}, so input may be pushed from
+     * one thread, while another thread decodes.
+     *
+     * @param input compressed input
+     * @throws IOException if the decoder is closed or {@link #endOfInput()} was already called
+     */
+    public void push(final ByteBuffer input) throws IOException {
+        ensureOpen();
+        if (!input.hasRemaining()) return;
+        final ByteBuffer copy = ByteBuffer.allocate(input.remaining());
+        copy.put(input);
+        // we cast, because of https://github.com/eclipse/jetty.project/issues/3244
+        ((Buffer)copy).flip();
+        queue.add(copy);
+    }
+
+    /**
+     * Signals that no more input will be pushed. Subsequent calls to {@link #decode(ByteBuffer)}
+     * decode the remaining input and then return {@code -1}.
+     */
+    public void endOfInput() {
+        queue.end();
+    }
+
+    /**
+     * Decodes as much of the input pushed so far into {@code dst}, as fits.
+     * Never waits for input.
+     *
+     * @param dst destination for decoded PCM
+     * @return number of decoded bytes, {@code 0}, if more input is needed, or {@code -1},
+     * if {@link #endOfInput()} was called and everything is decoded
+     * @throws IOException if something goes wrong
+     * @throws UnsupportedAudioFileException if the input cannot be decoded
+     */
+    public synchronized int decode(final ByteBuffer dst) throws IOException, UnsupportedAudioFileException {
+        ensureOpen();
+        if (codec == null && !openCodec()) return 0;
+        if (!dst.hasRemaining()) return 0;
+        int bytesRead = 0;
+        while (dst.hasRemaining()) {
+            if (!codec.nativeBuffer.hasRemaining()) {
+                codec.fillNativeBuffer();
+                if (!codec.nativeBuffer.hasRemaining()) break;
+            }
+            bytesRead += codec.transferTo(dst, dst.remaining());
+        }
+        if (bytesRead == 0 && !parser.isInputPending()) return -1;
+        return bytesRead;
+    }
+
+    /**
+     * Opens the codec, once the parser has seen the complete header of the input,
+     * which is the case, when it produced its first packets.
+     *
+     * @return true, if the codec is open, false, if more input is needed
+     */
+    private boolean openCodec() throws IOException, UnsupportedAudioFileException {
+        if (!parser.nativeBuffer.hasRemaining()) {
+            // packets parsed now stay in the parser's buffer, until the codec consumes them
+            parser.fillNativeBuffer();
+            if (!parser.nativeBuffer.hasRemaining() && parser.isInputPending()) return false;
+        }
+        final AudioFormat sourceFormat = parser.getSourceFormat();
+        if (sourceFormat == null) throw new UnsupportedAudioFileException("Input does not contain any supported audio data");
+        final int channels = sourceFormat.getChannels();
+        final AudioFormat targetFormat = new AudioFormat(CAAudioFormat.CAEncoding.PCM_SIGNED,
+                sourceFormat.getSampleRate(), sampleSizeInBits, channels,
+                channels * sampleSizeInBits / 8, sourceFormat.getSampleRate(), bigEndian);
+        this.codec = new CACodecInputStream(targetFormat, parser, CANativePeerInputStream.getBufferSize(targetFormat));
+        this.format = targetFormat;
+        return true;
+    }
+
+    /**
+     * Format of the decoded PCM.
+     *
+     * @return format or {@code null}, if not enough input has been pushed to know it
+     */
+    public synchronized AudioFormat getFormat() {
+        return format;
+    }
+
+    /**
+     * Number of pushed bytes that have not been handed to the parser yet.
+     * Useful to stop reading from the source, while the decoder falls behind.
+     *
+     * @return number of bytes
+     */
+    public long getQueuedBytes() {
+        return queue.getQueuedBytes();
+    }
+
+    /**
+     * Closes the decoder and releases its native resources. Queued input is discarded.
+     *
+     * @throws IOException if something goes wrong
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        queue.clear();
+        if (codec != null) {
+            // also closes the parser
+            codec.close();
+        } else {
+            parser.close();
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) throw new IOException("Decoder is already closed");
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "CAPushDecoder{" +
+                "format=" + format +
+                ", queue=" + queue +
+                '}';
+    }
+
+    /**
+     * Thread-safe, non-blocking channel handing the pushed input to the parser.
+     * Returns {@code 0} if it is empty, and {@code -1}, if it is empty and the input ended.
+     */
+    private static class InputQueue implements ReadableByteChannel {
+
+        private final Deque<ByteBuffer> buffers = new ArrayDeque<>();
+        private long queuedBytes;
+        private boolean ended;
+        private boolean open = true;
+
+        synchronized void add(final ByteBuffer buffer) throws IOException {
+            if (!open) throw new IOException("Decoder is already closed");
+            if (ended) throw new IOException("End of input was already signaled");
+            buffers.add(buffer);
+            queuedBytes += buffer.remaining();
+        }
+
+        synchronized void end() {
+            ended = true;
+        }
+
+        synchronized long getQueuedBytes() {
+            return queuedBytes;
+        }
+
+        synchronized void clear() {
+            buffers.clear();
+            queuedBytes = 0;
+            open = false;
+        }
+
+        @Override
+        public synchronized int read(final ByteBuffer dst) throws IOException {
+            if (!open) throw new ClosedChannelException();
+            int bytesRead = 0;
+            while (dst.hasRemaining() && !buffers.isEmpty()) {
+                final ByteBuffer buffer = buffers.peek();
+                final int length = Math.min(dst.remaining(), buffer.remaining());
+                final int limit = buffer.limit();
+                // we cast, because of https://github.com/eclipse/jetty.project/issues/3244
+                ((Buffer)buffer).limit(buffer.position() + length);
+                dst.put(buffer);
+                ((Buffer)buffer).limit(limit);
+                if (!buffer.hasRemaining()) buffers.poll();
+                bytesRead += length;
+            }
+            queuedBytes -= bytesRead;
+            if (bytesRead == 0 && ended) return -1;
+            return bytesRead;
+        }
+
+        @Override
+        public synchronized boolean isOpen() {
+            return open;
+        }
+
+        @Override
+        public void close() {
+            clear();
+        }
+
+        @Override
+        public synchronized String toString() {
+            return "InputQueue{" +
+                    "queuedBytes=" + queuedBytes +
+                    ", ended=" + ended +
+                    '}';
+        }
+    }
+}
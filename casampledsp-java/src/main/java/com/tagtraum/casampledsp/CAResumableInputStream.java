@@ -0,0 +1,305 @@
+/*
+ * =================================================
+ * Copyright 2026 tagtraum industries incorporated
+ * This file is part of CASampledSP.
+ *
+ * CASampledSP is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * CASampledSP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with CASampledSP; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ * =================================================
+ */
+package com.tagtraum.casampledsp;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Objects;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Reads an HTTP resource and transparently resumes reading, if the connection drops.
+ * <p>
+ * The stream keeps track of the number of bytes it delivered. If reading fails or the connection ends
+ * before the announced length is reached, it reconnects with a {@code Range: bytes=N-} request and continues
+ * right where it stopped, so that a parser reading from it never notices. To make sure the resource has not
+ * changed in the meantime, the request carries an {@code If-Range} header with the resource's
+ * {@code ETag} or {@code Last-Modified} date. If the resource did change, reading fails.
+ * <p>
+ * Reconnecting is attempted at most {@code maxRetries} times in a row, waiting a little longer
+ * after each attempt. Once data arrives again, the count starts over.
+ *
+ * @author <a href="mailto:hs@tagtraum.com">Hendrik Schreiber</a>
+ * @see CAAudioFileReader#setResumeRetries(int)
+ */
+public class CAResumableInputStream extends InputStream {
+
+    /**
+     * Time in ms to wait before the first reconnect. Grows linearly with the number of attempts.
+     */
+    private static final int RETRY_DELAY = 250;
+    private static final Pattern CONTENT_RANGE = Pattern.compile("bytes\\s+(\\d+)-\\d+/(\\d+|\\*)");
+
+    private final URL url;
+    private final int connectTimeout;
+    private final int readTimeout;
+    private final int maxRetries;
+    private final String contentType;
+    private final String eTag;
+    private final String lastModified;
+    /**
+     * Total length of the resource or {@code -1}, if unknown.
+     */
+    private final long length;
+    private HttpURLConnection connection;
+    private InputStream in;
+    private long position;
+    private int failures;
+    private int resumes;
+    private boolean closed;
+
+    /**
+     * Connects to the given URL.
+     *
+     * @param url http or https URL
+     * @param connectTimeout connect timeout in ms
+     * @param readTimeout read timeout in ms, after which a stalled connection counts as dropped, {@code 0} for none
+     * @param maxRetries max number of reconnects in a row, before reading fails
+     * @throws IOException if the connection cannot be opened
+     */
+    public CAResumableInputStream(final URL url, final int connectTimeout, final int readTimeout, final int maxRetries) throws IOException {
+        if (maxRetries < 0) throw new IllegalArgumentException("Max retries must not be negative: " + maxRetries);
+        this.url = Objects.requireNonNull(url, "url");
+        this.connectTimeout = connectTimeout;
+        this.readTimeout = readTimeout;
+        this.maxRetries = maxRetries;
+        this.connection = connect(-1);
+        this.in = connection.getInputStream();
+        this.contentType = connection.getContentType();
+        this.length = connection.getContentLengthLong();
+        final String eTag = connection.getHeaderField("ETag");
+        // weak validators must not be used with If-Range
+        this.eTag = eTag != null && !eTag.startsWith("W/") ? eTag : null;
+        this.lastModified = connection.getHeaderField("Last-Modified");
+    }
+
+    private HttpURLConnection connect(final long from) throws IOException {
+        final HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setConnectTimeout(connectTimeout);
+        connection.setReadTimeout(readTimeout);
+        if (from > 0) {
+            connection.setRequestProperty("Range", "bytes=" + from + "-");
+            if (eTag != null) connection.setRequestProperty("If-Range", eTag);
+            else if (lastModified != null) connection.setRequestProperty("If-Range", lastModified);
+        }
+        return connection;
+    }
+
+    @Override
+    public int read() throws IOException {
+        final byte[] b = new byte[1];
+        final int justRead = read(b, 0, 1);
+        return justRead == 1 ? b[0] & 0xFF : -1;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+        if (len == 0) return 0;
+        while (true) {
+            ensureOpen();
+            IOException failure;
+            try {
+                final int justRead = in.read(b, off, len);
+                if (justRead > 0) {
+                    position += justRead;
+                    failures = 0;
+                    return justRead;
+                }
+                if (length < 0 || position >= length) return -1;
+                failure = new EOFException("Connection to " + url + " closed after " + position + " of " + length + " bytes");
+            } catch (final IOException e) {
+                if (closed) throw e;
+                failure = e;
+            }
+            resume(failure);
+        }
+    }
+
+    /**
+     * Reconnects and continues at {@link #getPosition()}.
+     *
+     * @param cause reason for reconnecting
+     * @throws IOException {@code cause}, if all retries failed, or an exception, if the resource changed
+     */
+    private void resume(final IOException cause) throws IOException {
+        disconnect();
+        while (true) {
+            if (failures >= maxRetries) throw cause;
+            failures++;
+            try {
+                Thread.sleep((long) RETRY_DELAY * failures);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while reconnecting to " + url);
+            }
+            final HttpURLConnection resumed = connect(position);
+            final InputStream body;
+            try {
+                body = resumed.getInputStream();
+            } catch (final IOException e) {
+                resumed.disconnect();
+                cause.addSuppressed(e);
+                continue;
+            }
+            this.connection = resumed;
+            this.in = body;
+            // any failure to validate is final, as retrying would not change the resource back
+            if (resumed.getResponseCode() == HttpURLConnection.HTTP_PARTIAL) {
+                validatePartial();
+            } else {
+                validateFull();
+            }
+            resumes++;
+            return;
+        }
+    }
+
+    private void validatePartial() throws IOException {
+        final String contentRange = connection.getHeaderField("Content-Range");
+        final Matcher matcher = contentRange == null ? null : CONTENT_RANGE.matcher(contentRange);
+        if (matcher == null || !matcher.matches()) {
+            throw new IOException("Cannot resume " + url + ", unexpected Content-Range: " + contentRange);
+        }
+        if (Long.parseLong(matcher.group(1)) != position) {
+            throw new IOException("Cannot resume " + url + " at " + position + ", server sent: " + contentRange);
+        }
+        if (length >= 0 && !"*".equals(matcher.group(2)) && Long.parseLong(matcher.group(2)) != length) {
+            throw new IOException("Cannot resume " + url + ", its length changed: " + contentRange);
+        }
+        checkValidators();
+    }
+
+    /**
+     * The server sent the whole resource, either because it changed, or because it does not support ranges.
+     * In the latter case, we skip what we already delivered.
+     */
+    private void validateFull() throws IOException {
+        checkValidators();
+        if (length >= 0 && connection.getContentLengthLong() >= 0 && connection.getContentLengthLong() != length) {
+            throw new IOException("Cannot resume " + url + ", its length changed");
+        }
+        long skipped = 0;
+        while (skipped < position) {
+            final long justSkipped = in.skip(position - skipped);
+            if (justSkipped <= 0) {
+                if (in.read() < 0) throw new EOFException("Cannot resume " + url + ", it is shorter than " + position + " bytes");
+                skipped++;
+            } else {
+                skipped += justSkipped;
+            }
+        }
+    }
+
+    private void checkValidators() throws IOException {
+        final String newETag = connection.getHeaderField("ETag");
+        final String newLastModified = connection.getHeaderField("Last-Modified");
+        if (eTag != null && newETag != null && !eTag.equals(newETag)
+                || eTag == null && lastModified != null && newLastModified != null && !lastModified.equals(newLastModified)) {
+            throw new IOException("Cannot resume " + url + ", it changed");
+        }
+    }
+
+    @Override
+    public int available() throws IOException {
+        ensureOpen();
+        try {
+            return in.available();
+        } catch (final IOException e) {
+            // we will find out when reading
+            return 0;
+        }
+    }
+
+    /**
+     * Number of bytes delivered so far, i.e. the offset to resume at.
+     *
+     * @return bytes
+     */
+    public long getPosition() {
+        return position;
+    }
+
+    /**
+     * Total length of the resource.
+     *
+     * @return bytes or {@code -1}, if unknown
+     */
+    public long getLength() {
+        return length;
+    }
+
+    /**
+     * Content type of the resource, as sent by the server.
+     *
+     * @return content type or {@code null}
+     */
+    public String getContentType() {
+        return contentType;
+    }
+
+    /**
+     * Number of times this stream successfully resumed after a dropped connection.
+     *
+     * @return resumes
+     */
+    public int getResumes() {
+        return resumes;
+    }
+
+    private void disconnect() {
+        try {
+            in.close();
+        } catch (final IOException e) {
+            // the connection is gone anyway
+        }
+        connection.disconnect();
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) throw new IOException("Stream is already closed");
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        try {
+            in.close();
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "CAResumableInputStream{" +
+                "url=" + url +
+                ", position=" + position +
+                ", length=" + length +
+                ", resumes=" + resumes +
+                '}';
+    }
+}
@@ -0,0 +1,283 @@
+/*
+ * =================================================
+ * Copyright 2026 tagtraum industries incorporated
+ * This file is part of CASampledSP.
+ *
+ * CASampledSP is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * CASampledSP is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with CASampledSP; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ * =================================================
+ */
+package com.tagtraum.casampledsp;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Read-only {@link SeekableByteChannel} that makes a non-seekable source seekable by keeping
+ * all bytes read from it in a spool.
+ * <p>
+ * The first {@link #getMaxMemory()} bytes are kept off-heap in direct buffers borrowed from the
+ * {@link CADirectBufferPool}, all further bytes spill to a temporary file, which is deleted on close.
+ * Positions before {@link #size()} are served from the spool. Reading at or beyond {@link #size()}
+ * reads (and spools) more data from the source, until the position is reached or the source is exhausted.
+ * <p>
+ * Opened via {@link CAStreamInputStream#CAStreamInputStream(ReadableByteChannel, int, int)},
+ * this lets stream based audio seek backwards, and forwards as far as data arrives.
+ * The source itself is not closed, when this channel is closed.
+ *
+ * @author <a href="mailto:hs@tagtraum.com">Hendrik Schreiber</a>
+ */
+public final class CASpoolChannel implements SeekableByteChannel {
+
+    /**
+     * Size of a single in-memory spool chunk.
+     */
+    static final int CHUNK_SIZE = 64 * 1024;
+
+    private final ReadableByteChannel source;
+    private final long maxMemory;
+    private final List<ByteBuffer> chunks = new ArrayList<>();
+    private FileChannel spillFile;
+    private ByteBuffer spillBuffer;
+    private long size;
+    private long position;
+    private boolean endOfSource;
+    private boolean open = true;
+
+    /**
+     * Creates a spool for the given stream.
+     *
+     * @param source source stream
+     * @param maxMemory max number of bytes to keep in memory, rounded down to a multiple of 64 kB
+     */
+    public CASpoolChannel(final InputStream source, final long maxMemory) {
+        this(Channels.newChannel(Objects.requireNonNull(source, "source")), maxMemory);
+    }
+
+    /**
+     * Creates a spool for the given channel.
+     *
+     * @param source blocking source channel
+     * @param maxMemory max number of bytes to keep in memory, rounded down to a multiple of 64 kB
+     */
+    public CASpoolChannel(final ReadableByteChannel source, final long maxMemory) {
+        if (maxMemory < 0) throw new IllegalArgumentException("Max memory must not be negative: " + maxMemory);
+        this.source = Objects.requireNonNull(source, "source");
+        this.maxMemory = maxMemory - maxMemory % CHUNK_SIZE;
+    }
+
+    @Override
+    public synchronized int read(final ByteBuffer dst) throws IOException {
+        ensureOpen();
+        if (!dst.hasRemaining()) return 0;
+        while (position >= size && !endOfSource) {
+            spool();
+        }
+        if (position >= size) return -1;
+        final int length = (int)Math.min(dst.remaining(), size - position);
+        final int limit = dst.limit();
+        // we cast, because of https://github.com/eclipse/jetty.project/issues/3244
+        ((Buffer)dst).limit(dst.position() + length);
+        try {
+            while (dst.hasRemaining()) {
+                final long offset = position;
+                if (offset < maxMemory) {
+                    final ByteBuffer chunk = chunks.get((int)(offset / CHUNK_SIZE)).duplicate();
+                    final int chunkPosition = (int)(offset % CHUNK_SIZE);
+                    ((Buffer)chunk).position(chunkPosition);
+                    ((Buffer)chunk).limit(Math.min(CHUNK_SIZE, chunkPosition + dst.remaining()));
+                    position += chunk.remaining();
+                    dst.put(chunk);
+                } else {
+                    final int justRead = spillFile.read(dst, offset - maxMemory);
+                    if (justRead < 0) throw new IOException("Spool file is shorter than expected: " + (offset - maxMemory));
+                    position += justRead;
+                }
+            }
+        } finally {
+            ((Buffer)dst).limit(limit);
+        }
+        return length;
+    }
+
+    /**
+     * Reads the next bytes from the source and appends them to the spool.
+     *
+     * @throws IOException if something goes wrong
+     */
+    private void spool() throws IOException {
+        final ByteBuffer target;
+        if (size < maxMemory) {
+            final int index = (int)(size / CHUNK_SIZE);
+            if (index == chunks.size()) {
+                chunks.add(CADirectBufferPool.getDefault().acquire(CHUNK_SIZE));
+            }
+            target = chunks.get(index).duplicate();
+            ((Buffer)target).clear();
+            ((Buffer)target).position((int)(size % CHUNK_SIZE));
+            ((Buffer)target).limit(CHUNK_SIZE);
+        } else {
+            if (spillFile == null) {
+                final Path path = Files.createTempFile("casampledsp", ".spool");
+                spillFile = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE);
+                spillBuffer = CADirectBufferPool.getDefault().acquire(CHUNK_SIZE);
+            }
+            target = spillBuffer;
+            ((Buffer)target).clear();
+        }
+        final int start = target.position();
+        int justRead;
+        do {
+            justRead = source.read(target);
+        } while (justRead == 0);
+        if (justRead < 0) {
+            endOfSource = true;
+            return;
+        }
+        if (target == spillBuffer) {
+            ((Buffer)target).flip();
+            long offset = size - maxMemory;
+            while (target.hasRemaining()) {
+                offset += spillFile.write(target, offset);
+            }
+        }
+        size += target.position() - start;
+    }
+
+    @Override
+    public int write(final ByteBuffer src) throws IOException {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public synchronized long position() throws IOException {
+        ensureOpen();
+        return position;
+    }
+
+    /**
+     * Sets the position. Positions beyond {@link #size()} are reached by reading more data from the source.
+     *
+     * @param newPosition new position
+     * @return this channel
+     * @throws IOException if the channel is closed
+     */
+    @Override
+    public synchronized SeekableByteChannel position(final long newPosition) throws IOException {
+        if (newPosition < 0) throw new IllegalArgumentException("Position must not be negative: " + newPosition);
+        ensureOpen();
+        this.position = newPosition;
+        return this;
+    }
+
+    /**
+     * Number of bytes spooled so far.
+     *
+     * @return bytes
+     * @throws IOException if the channel is closed
+     */
+    @Override
+    public synchronized long size() throws IOException {
+        ensureOpen();
+        return size;
+    }
+
+    @Override
+    public SeekableByteChannel truncate(final long size) throws IOException {
+        throw new NonWritableChannelException();
+    }
+
+    /**
+     * Max number of bytes kept in memory.
+     *
+     * @return bytes
+     */
+    public long getMaxMemory() {
+        return maxMemory;
+    }
+
+    /**
+     * Indicates whether the spool exceeded {@link #getMaxMemory()} and spilled to a temporary file.
+     *
+     * @return true, if spilled
+     */
+    public synchronized boolean isSpilled() {
+        return spillFile != null;
+    }
+
+    /**
+     * Indicates whether the source is exhausted, i.e. {@link #size()} is final.
+     *
+     * @return true or false
+     */
+    public synchronized boolean isComplete() {
+        return endOfSource;
+    }
+
+    @Override
+    public synchronized boolean isOpen() {
+        return open;
+    }
+
+    /**
+     * Releases the in-memory spool and deletes the temporary file. Does not close the source.
+     *
+     * @throws IOException if something goes wrong
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (!open) return;
+        open = false;
+        final CADirectBufferPool pool = CADirectBufferPool.getDefault();
+        for (final ByteBuffer chunk : chunks) {
+            pool.release(chunk);
+        }
+        chunks.clear();
+        pool.release(spillBuffer);
+        spillBuffer = null;
+        if (spillFile != null) {
+            spillFile.close();
+            spillFile = null;
+        }
+    }
+
+    private void ensureOpen() throws ClosedChannelException {
+        if (!open) throw new ClosedChannelException();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "CASpoolChannel{" +
+                "size=" + size +
+                ", position=" + position +
+                ", maxMemory=" + maxMemory +
+                ", spilled=" + (spillFile != null) +
+                ", complete=" + endOfSource +
+                '}';
+    }
+}
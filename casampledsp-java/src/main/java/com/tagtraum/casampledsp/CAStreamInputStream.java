@@ -20,11 +20,22 @@
  */
 package com.tagtraum.casampledsp;
 
+import javax.sound.sampled.AudioFormat;
 import javax.sound.sampled.UnsupportedAudioFileException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.nio.Buffer;
 import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.channels.SelectableChannel;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.TreeMap;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -35,10 +46,73 @@ import java.util.concurrent.TimeUnit;
 public class CAStreamInputStream extends CANativePeerInputStream {
 
     /**
-     * Java audio buffer. We keep this smaller to make sure that its content still fits into the native buffer.
+     * Max size of a memory-mapped region of a file.
      */
-    private final byte[] streamReadBuffer = new byte[4 * 1024];
+    private static final int MAPPED_WINDOW_SIZE = 64 * 1024 * 1024;
+
+    /**
+     * Smallest number of bytes fed to the parser at once.
+     */
+    static final int MIN_FEED_SIZE = 4 * 1024;
+
+    /**
+     * Interval in ms at which a followed file is checked for growth.
+     * May be set via the system property {@code CA_FOLLOW_POLL_INTERVAL}.
+     *
+     * @see #follow(FileChannel, int, int, long, TimeUnit)
+     */
+    public static int FOLLOW_POLL_INTERVAL = Integer.parseInt(System.getProperty("CA_FOLLOW_POLL_INTERVAL", "50"));
+
+    /**
+     * Java audio buffer. Grows with {@link #feedSize}.
+     */
+    private byte[] streamReadBuffer;
+    /**
+     * Current number of bytes to feed to the parser at once. Adapts to how fast the source delivers.
+     */
+    private int feedSize = MIN_FEED_SIZE;
+    private long bytesFed;
+    private long parseCalls;
+    private long feedNanos;
     private final InputStream stream;
+    private final ReadableByteChannel channel;
+    /**
+     * Direct buffer the {@link #channel} is read into, if it is not memory-mapped.
+     */
+    private ByteBuffer channelReadBuffer;
+    /**
+     * Currently memory-mapped region of the {@link #channel}, if it is a {@link FileChannel}.
+     */
+    private MappedByteBuffer mappedWindow;
+    private boolean mapped;
+    /**
+     * Stream offset of the current input from {@link #nextInput()}.
+     */
+    private long inputOffset;
+    /**
+     * Stream offsets of parsed packet batches by first packet, if seekable.
+     */
+    private final NavigableMap<Long, Long> packetOffsets;
+    /**
+     * Indicates whether the {@link #channel} or {@link #stream} is owned by this stream and must be closed with it.
+     */
+    private boolean closeSource;
+    /**
+     * Indicates whether a {@link #channel} read returning no data means "no data right now" instead of "try again".
+     */
+    private boolean nonBlocking;
+    private boolean inputPending;
+    private boolean live;
+    /**
+     * Time in ms to wait for a followed file to grow, before reporting its end, or {@code -1}, if not following.
+     */
+    private long followTimeout = -1;
+    /**
+     * Held while filling the native buffer and while closing, so that the native peer
+     * is never freed during a fill. Waiting for a followed file to grow releases it.
+     */
+    private final Object fillLock = new Object();
+    private volatile boolean closing;
 
     /**
      * Opens a codec stream with the default buffer size given in {@link #DEFAULT_BUFFER_SIZE}.
@@ -58,57 +132,534 @@ public class CAStreamInputStream extends CANativePeerInputStream {
      * @param bufferSize buffer size to use when reading
      */
     public CAStreamInputStream(final InputStream stream, final int hint, final int bufferSize) throws IOException, UnsupportedAudioFileException {
-        this.nativeBuffer = ByteBuffer.allocateDirect(bufferSize);
-        ((Buffer)this.nativeBuffer).limit(0);
-        this.pointer = open(hint, bufferSize);
+        this(stream, null, false, hint, bufferSize);
+    }
+
+    /**
+     * Opens a stream from a channel with the default buffer size given in {@link #DEFAULT_BUFFER_SIZE}.
+     *
+     * @param channel blocking channel
+     * @param hint format hint
+     * @see #CAStreamInputStream(ReadableByteChannel, int, int)
+     */
+    public CAStreamInputStream(final ReadableByteChannel channel, final int hint) throws IOException, UnsupportedAudioFileException {
+        this(channel, hint, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Opens a stream from a channel with the given buffer size.
+     * Data is fed to the parser from a direct buffer, without copying it to the Java heap.
+     * If {@code channel} is a {@link FileChannel}, data is fed straight from a memory-mapped
+     * region, starting at the channel's current position.
+     * If {@code channel} is a {@link SeekableByteChannel}, this stream is seekable.
+     * The channel is not closed, when this stream is closed.
+     * To read from a {@link java.io.FileInputStream} this way, pass its {@link java.io.FileInputStream#getChannel() channel}.
+     *
+     * @param channel blocking channel
+     * @param hint format hint
+     * @param bufferSize buffer size to use when reading
+     * @throws IllegalArgumentException if the channel is in non-blocking mode
+     */
+    public CAStreamInputStream(final ReadableByteChannel channel, final int hint, final int bufferSize) throws IOException, UnsupportedAudioFileException {
+        this(null, requireBlocking(channel), channel instanceof SeekableByteChannel, hint, bufferSize);
+    }
+
+    /**
+     * Opens a seekable stream that spools everything it reads from {@code stream} into a {@link CASpoolChannel}.
+     * The spool is released, when the returned stream is closed.
+     *
+     * @param stream stream
+     * @param maxMemory max number of spooled bytes to keep in memory, before spilling to a temporary file
+     * @param hint format hint
+     * @param bufferSize buffer size to use when reading
+     * @return seekable stream
+     */
+    static CAStreamInputStream spooled(final InputStream stream, final long maxMemory, final int hint,
+                                       final int bufferSize) throws IOException, UnsupportedAudioFileException {
+        final CASpoolChannel spool = new CASpoolChannel(stream, maxMemory);
+        try {
+            final CAStreamInputStream spooled = new CAStreamInputStream(spool, hint, bufferSize);
+            spooled.closeSource = true;
+            return spooled;
+        } catch (final Throwable t) {
+            spool.close();
+            throw t;
+        }
+    }
+
+    /**
+     * Opens a stream that never waits for its channel. If the channel has no data right now,
+     * i.e. a read returns {@code 0}, filling stops and {@link #isInputPending()} returns true.
+     *
+     * @param channel non-blocking channel
+     * @param hint format hint
+     * @param bufferSize buffer size to use when reading
+     * @return non-blocking stream
+     */
+    static CAStreamInputStream nonBlocking(final ReadableByteChannel channel, final int hint,
+                                           final int bufferSize) throws IOException, UnsupportedAudioFileException {
+        final CAStreamInputStream nonBlocking = new CAStreamInputStream(null, Objects.requireNonNull(channel, "channel"),
+            channel instanceof SeekableByteChannel, hint, bufferSize);
+        nonBlocking.nonBlocking = true;
+        return nonBlocking;
+    }
+
+    /**
+     * Opens a stream for a live source. Codecs reading from it start with a small fill and grow it afterwards,
+     * to emit the first audio as soon as possible. The source is closed, when the returned stream is closed.
+     *
+     * @param stream live stream
+     * @param hint format hint
+     * @param bufferSize initial buffer size, which grows, if necessary
+     * @return live stream
+     */
+    static CAStreamInputStream live(final InputStream stream, final int hint,
+                                    final int bufferSize) throws IOException, UnsupportedAudioFileException {
+        final CAStreamInputStream live = new CAStreamInputStream(stream, hint, bufferSize);
+        live.live = true;
+        live.closeSource = true;
+        return live;
+    }
+
+    /**
+     * Opens a stream that follows a file, which is still being written, e.g. by a recorder.
+     * <p>
+     * When parsing reaches the current end of the file, reading does not end, but waits for the
+     * file to grow, checking every {@link #FOLLOW_POLL_INTERVAL} ms. Once data is appended, parsing
+     * continues where it stopped. If the file does not grow for {@code idleTimeout}, the stream ends.
+     * <p>
+     * This works for formats that do not need their end to be parsed first, like WAV, CAF, MP3 or ADTS AAC,
+     * but not for M4A files whose sample table is written last.
+     * The channel is not closed, when this stream is closed.
+     *
+     * @param channel file channel, positioned at the start of the audio file
+     * @param hint format hint
+     * @param bufferSize buffer size to use when reading
+     * @param idleTimeout time to wait for the file to grow, before the stream ends
+     * @param timeUnit unit of {@code idleTimeout}
+     * @return stream following the file
+     * @throws IOException if something goes wrong
+     * @throws UnsupportedAudioFileException if the native parser cannot be opened
+     */
+    public static CAStreamInputStream follow(final FileChannel channel, final int hint, final int bufferSize,
+                                             final long idleTimeout, final TimeUnit timeUnit) throws IOException, UnsupportedAudioFileException {
+        if (idleTimeout < 0) throw new IllegalArgumentException("Idle timeout must not be negative: " + idleTimeout);
+        final CAStreamInputStream follow = new CAStreamInputStream(channel, hint, bufferSize);
+        follow.followTimeout = timeUnit.toMillis(idleTimeout);
+        // mapping would only ever cover the part of the file that exists already
+        follow.mapped = false;
+        return follow;
+    }
+
+    /**
+     * Makes this stream close its channel or stream, when it is closed.
+     */
+    void closeSource() {
+        this.closeSource = true;
+    }
+
+    private static ReadableByteChannel requireBlocking(final ReadableByteChannel channel) {
+        Objects.requireNonNull(channel, "channel");
+        if (channel instanceof SelectableChannel && !((SelectableChannel) channel).isBlocking()) {
+            throw new IllegalArgumentException("Channel must be in blocking mode: " + channel);
+        }
+        return channel;
+    }
+
+    private CAStreamInputStream(final InputStream stream, final ReadableByteChannel channel, final boolean seekable,
+                                final int hint, final int bufferSize) throws IOException, UnsupportedAudioFileException {
+        super(bufferSize);
+        try {
+            this.nativeBuffer = CADirectBufferPool.getDefault().acquire(bufferSize);
+            ((Buffer)this.nativeBuffer).limit(0);
+            this.pointer = open(hint, bufferSize);
+        } catch (final Throwable t) {
+            abandon();
+            throw t;
+        }
+        track(CAStreamInputStream::close);
         this.stream  = stream;
+        this.channel = channel;
+        this.streamReadBuffer = channel == null ? new byte[MIN_FEED_SIZE] : null;
+        // pipes etc. report a size of 0 and cannot be mapped
+        this.mapped = channel instanceof FileChannel && ((FileChannel) channel).size() > 0;
+        this.packetOffsets = seekable ? new TreeMap<>() : null;
     }
 
     /**
-     * Always returns <code>false</code>.
-     * Stream based {@link CANativePeerInputStream}s are not seekable.
+     * Indicates whether this stream is seekable, which is the case, if it was
+     * opened from a {@link SeekableByteChannel}. Streams opened from an {@link InputStream} are not seekable.
      *
-     * @return false
+     * @return true or false
      */
     @Override
     public boolean isSeekable() {
-        return false;
+        return packetOffsets != null;
     }
 
     /**
-     * Always throws {@link UnsupportedOperationException}, because stream based
-     * {@link CANativePeerInputStream}s are not seekable.
+     * Seeks to the given time, if this stream is seekable.
+     * While parsing, this stream records the stream offset of each batch of packets,
+     * starting with the offset of the audio data, which is known from the header.
+     * Seeking repositions the channel to the closest recorded batch before the given time
+     * and lets the parser drop all packets before it. Times that have not been parsed yet
+     * are reached by a parse-only scan from the last recorded batch.
      *
      * @param time time
      * @param timeUnit time unit
-     * @throws UnsupportedOperationException always
-     * @throws IOException never
+     * @throws UnsupportedOperationException if this stream is not seekable
+     * @throws IOException if something goes wrong, e.g. the header did not tell where the audio data starts
+     * @see #isSeekable()
      */
     @Override
-    public void seek(final long time, final TimeUnit timeUnit) throws UnsupportedOperationException, IOException {
-        throw new UnsupportedOperationException("Seeking is not supported.");
+    public synchronized void seek(final long time, final TimeUnit timeUnit) throws UnsupportedOperationException, IOException {
+        if (!isSeekable()) throw new UnsupportedOperationException("Seeking is not supported.");
+        final long microseconds = timeUnit.toMicros(time);
+        pausePrefetch();
+        try {
+            if (!isOpen()) throw new IOException("Stream is already closed");
+            if (packetOffsets.isEmpty()) {
+                // parse the header first, so that we know how to translate time to packets
+                fillNativeBuffer();
+            }
+            final long packet = seek(pointer, microseconds);
+            final Map.Entry<Long, Long> start = packetOffsets.floorEntry(packet);
+            if (start == null) throw new IOException("Stream offset of packet " + packet + " is unknown, cannot seek");
+            unmapWindow();
+            ((SeekableByteChannel) channel).position(start.getValue());
+            reposition(pointer, start.getKey());
+            // we cast, because of https://github.com/eclipse/jetty.project/issues/3244
+            ((Buffer)nativeBuffer).limit(0);
+        } finally {
+            resumePrefetch();
+        }
+    }
+
+    /**
+     * Records the stream offset of a batch of packets. Called from native code while parsing.
+     *
+     * @param packet first packet of the batch
+     * @param offset stream offset of the packet in bytes
+     */
+    void indexPacket(final long packet, final long offset) {
+        if (packetOffsets != null && (packetOffsets.isEmpty() || packet > packetOffsets.lastKey())) {
+            packetOffsets.put(packet, offset);
+        }
     }
 
     @Override
     protected void fillNativeBuffer() throws IOException {
-        if (isOpen()) {
-            // make sure we are at the start of the native buffer, before we fill it
-            ((Buffer)this.nativeBuffer).limit(0);
-            // read data, until we have a new limit or we reached the end of the file
-            int justRead;
-            while ((justRead = stream.read(streamReadBuffer)) != -1) {
+        synchronized (fillLock) {
+            if (isOpen() && !closing) {
+                // make sure we are at the start of the native buffer, before we fill it
+                ((Buffer)this.nativeBuffer).limit(0);
+                final long start = System.nanoTime();
+                try {
+                    if (channel != null) {
+                        fillNativeBufferFromChannel();
+                    } else {
+                        fillNativeBufferFromStream();
+                    }
+                } finally {
+                    feedNanos += System.nanoTime() - start;
+                }
+            }
+        }
+    }
+
+    private void fillNativeBufferFromStream() throws IOException {
+        // read data, until we have a new limit or we reached the end of the file
+        while (true) {
+            final int requested = Math.min(feedSize, getMaxFeedSize());
+            if (streamReadBuffer.length < requested) {
+                streamReadBuffer = new byte[requested];
+            }
+            final int justRead = stream.read(streamReadBuffer, 0, requested);
+            if (justRead == -1) break;
+            if (justRead > 0) {
                 fillNativeBuffer(pointer, streamReadBuffer, justRead);
-                if (nativeBuffer.hasRemaining()) {
-                    // we have new data, let's break
-                    break;
+                fed(justRead);
+            }
+            adaptFeedSize(requested, justRead);
+            if (nativeBuffer.hasRemaining()) {
+                // we have new data, let's break
+                break;
+            }
+        }
+    }
+
+    private void fillNativeBufferFromChannel() throws IOException {
+        ByteBuffer input;
+        while ((input = nextInput()) != null) {
+            final int length = input.remaining();
+            fillNativeBufferDirect(pointer, input, input.position(), length, isSeekable() ? inputOffset : -1);
+            fed(length);
+            // we cast, because of https://github.com/eclipse/jetty.project/issues/3244
+            ((Buffer)input).position(input.position() + length);
+            if (mapped) {
+                final FileChannel fileChannel = (FileChannel) channel;
+                fileChannel.position(fileChannel.position() + length);
+            }
+            if (nativeBuffer.hasRemaining()) {
+                // we have new data, let's break
+                break;
+            }
+        }
+    }
+
+    private void fed(final int length) {
+        bytesFed += length;
+        parseCalls++;
+    }
+
+    /**
+     * Most bytes to feed to the parser at once, i.e. the free space left in the native buffer.
+     * Because the parser's output is no larger than its input, this should not require the buffer to grow.
+     *
+     * @return number of bytes
+     */
+    private int getMaxFeedSize() {
+        return Math.max(MIN_FEED_SIZE, nativeBuffer.capacity() - nativeBuffer.limit());
+    }
+
+    /**
+     * Doubles the feed size, if the source delivered all requested bytes, and halves it,
+     * if the source delivered less than half, as live sources do. Fewer, larger chunks mean
+     * fewer JNI transitions, smaller chunks mean lower latency.
+     *
+     * @param requested number of requested bytes
+     * @param justRead number of bytes the source delivered
+     */
+    private void adaptFeedSize(final int requested, final int justRead) {
+        if (justRead >= requested) {
+            feedSize = (int)Math.min(getMaxFeedSize(), 2L * feedSize);
+        } else if (justRead < requested / 2) {
+            feedSize = Math.max(MIN_FEED_SIZE, feedSize / 2);
+        }
+    }
+
+    /**
+     * Provides the next chunk of input from the {@link #channel} as a direct buffer.
+     *
+     * @return input with at least one byte remaining or {@code null}, if the end of the channel is reached
+     * @throws IOException if something goes wrong
+     */
+    private ByteBuffer nextInput() throws IOException {
+        if (mapped) {
+            final FileChannel fileChannel = (FileChannel) channel;
+            if (mappedWindow == null || !mappedWindow.hasRemaining()) {
+                unmapWindow();
+                final long position = fileChannel.position();
+                final long length = Math.min(MAPPED_WINDOW_SIZE, fileChannel.size() - position);
+                if (length <= 0) return null;
+                mappedWindow = fileChannel.map(FileChannel.MapMode.READ_ONLY, position, length);
+            }
+            // mapped data is always available right away
+            feedSize = getMaxFeedSize();
+            inputOffset = fileChannel.position();
+            final ByteBuffer input = mappedWindow.duplicate();
+            // we cast, because of https://github.com/eclipse/jetty.project/issues/3244
+            ((Buffer)input).limit(Math.min(input.limit(), input.position() + feedSize));
+            ((Buffer)mappedWindow).position(input.limit());
+            return input;
+        }
+        final int requested = Math.min(feedSize, getMaxFeedSize());
+        if (channelReadBuffer == null || channelReadBuffer.capacity() < requested) {
+            CADirectBufferPool.getDefault().release(channelReadBuffer);
+            channelReadBuffer = CADirectBufferPool.getDefault().acquire(requested);
+        }
+        ((Buffer)channelReadBuffer).clear();
+        ((Buffer)channelReadBuffer).limit(requested);
+        if (isSeekable()) {
+            inputOffset = ((SeekableByteChannel) channel).position();
+        }
+        int justRead;
+        while (true) {
+            justRead = channel.read(channelReadBuffer);
+            if (justRead == 0 && !nonBlocking) {
+                // a blocking channel must deliver at least one byte, so instead of spinning, we give up
+                throw new IOException("Blocking channel returned no data: " + channel);
+            }
+            if (justRead == -1 && isFollowing() && awaitGrowth()) continue;
+            break;
+        }
+        inputPending = justRead == 0;
+        if (justRead <= 0) return null;
+        adaptFeedSize(requested, justRead);
+        ((Buffer)channelReadBuffer).flip();
+        return channelReadBuffer;
+    }
+
+    /**
+     * Indicates whether this stream follows a file that is still being written.
+     *
+     * @return true or false
+     * @see #follow(FileChannel, int, int, long, TimeUnit)
+     */
+    public boolean isFollowing() {
+        return followTimeout >= 0;
+    }
+
+    /**
+     * Waits for the followed file to grow beyond the channel's position.
+     * Must be called while holding {@link #fillLock}, which is released while waiting,
+     * so that the stream can be closed meanwhile.
+     *
+     * @return true, if the file grew, false, if it did not grow within the idle timeout or this stream was closed
+     * @throws IOException if something goes wrong
+     */
+    private boolean awaitGrowth() throws IOException {
+        final FileChannel fileChannel = (FileChannel) channel;
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(followTimeout);
+        while (fileChannel.size() <= fileChannel.position()) {
+            if (closing || !isOpen() || System.nanoTime() - deadline >= 0) return false;
+            try {
+                fillLock.wait(Math.max(1, FOLLOW_POLL_INTERVAL));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for " + channel + " to grow.");
+            }
+        }
+        return true;
+    }
+
+    @Override
+    boolean isLive() {
+        return live;
+    }
+
+    @Override
+    boolean isInputPending() {
+        return inputPending;
+    }
+
+    /**
+     * Format of the parsed audio data, as soon as the parser has seen it.
+     *
+     * @return format or {@code null}, if not known yet
+     * @throws IOException if the stream is already closed
+     */
+    AudioFormat getSourceFormat() throws IOException {
+        if (!isOpen()) throw new IOException("Stream is already closed");
+        return getSourceFormat(pointer);
+    }
+
+    /**
+     * Parses the whole stream without decoding it, counting its packets and frames.
+     * Parsed packets are neither copied to the native buffer nor handed to a codec, so a scan runs at I/O speed.
+     * The counts are exact, even for VBR data without a header, see {@link #getScannedPackets()} and
+     * {@link #getScannedFrames()}. Afterwards, the stream is at its end.
+     *
+     * @throws IOException if something goes wrong
+     * @throws IllegalStateException if data was already parsed
+     */
+    synchronized void scan() throws IOException {
+        if (!isOpen()) throw new IOException("Stream is already closed");
+        if (bytesFed > 0) throw new IllegalStateException("Stream was already read from");
+        scanOnly(pointer);
+        // as nothing ends up in the native buffer, this parses until the end of the input
+        fillNativeBuffer();
+    }
+
+    /**
+     * Number of packets parsed by {@link #scan()}.
+     *
+     * @return packets
+     * @throws IOException if the stream is already closed
+     */
+    long getScannedPackets() throws IOException {
+        if (!isOpen()) throw new IOException("Stream is already closed");
+        return getPacketCount(pointer);
+    }
+
+    /**
+     * Number of frames parsed by {@link #scan()}, excluding priming and remainder frames,
+     * if the stream says how many there are.
+     *
+     * @return frames
+     * @throws IOException if the stream is already closed
+     */
+    long getScannedFrames() throws IOException {
+        if (!isOpen()) throw new IOException("Stream is already closed");
+        return getFrameCount(pointer);
+    }
+
+    /**
+     * Current number of bytes fed to the parser at once.
+     * Grows toward the free space in the native buffer, while the source delivers quickly,
+     * and shrinks for sources that deliver little data at a time, like live streams.
+     *
+     * @return number of bytes
+     */
+    public int getFeedSize() {
+        return feedSize;
+    }
+
+    /**
+     * Total number of bytes fed to the parser.
+     *
+     * @return number of bytes
+     */
+    public long getBytesFed() {
+        return bytesFed;
+    }
+
+    /**
+     * Total number of parser calls, each of which is a JNI transition.
+     *
+     * @return number of calls
+     */
+    public long getParseCalls() {
+        return parseCalls;
+    }
+
+    /**
+     * Number of bytes fed to the parser per second spent filling the native buffer,
+     * including the time spent reading from the source.
+     *
+     * @return bytes per second or {@code 0}, if nothing was fed yet
+     */
+    public double getFeedThroughput() {
+        return feedNanos == 0 ? 0 : bytesFed * 1000000000.0 / feedNanos;
+    }
+
+    private void unmapWindow() {
+        // the mapping is released by the garbage collector, unmapping it explicitly could crash
+        // a parser that still refers to it
+        mappedWindow = null;
+    }
+
+    @Override
+    public void close() throws IOException {
+        closing = true;
+        // a prefetch fill may hold the fill lock, while waiting for a followed file to grow
+        stopPrefetch();
+        synchronized (fillLock) {
+            fillLock.notifyAll();
+            try {
+                super.close();
+            } finally {
+                unmapWindow();
+                CADirectBufferPool.getDefault().release(channelReadBuffer);
+                channelReadBuffer = null;
+                if (closeSource) {
+                    if (channel != null) channel.close();
+                    else stream.close();
                 }
             }
         }
     }
 
     private native void fillNativeBuffer(final long audioFileID, final byte[] buf, final int length) throws IOException;
+    private native void fillNativeBufferDirect(final long audioFileID, final ByteBuffer buf, final int offset, final int length, final long streamOffset) throws IOException;
+    private native long seek(final long audioFileID, final long microseconds) throws IOException;
+    private native void reposition(final long audioFileID, final long packet) throws IOException;
+    private native AudioFormat getSourceFormat(final long audioFileID);
+    private native void scanOnly(final long audioFileID);
+    private native long getPacketCount(final long audioFileID);
+    private native long getFrameCount(final long audioFileID);
     private native long open(final int hint, final int bufferSize) throws IOException;
-    protected native void close(final long pointer) throws IOException;
+    private static native void close(final long pointer) throws IOException;
 
 
 }
@@ -24,7 +24,6 @@ import javax.sound.sampled.UnsupportedAudioFileException;
 import java.io.IOException;
 import java.net.URL;
 import java.nio.Buffer;
-import java.nio.ByteBuffer;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -53,11 +52,18 @@ public class CAURLInputStream extends CANativePeerInputStream {
      * @param bufferSize buffer size to use when reading
      */
     public CAURLInputStream(final URL url, final int bufferSize) throws IOException, UnsupportedAudioFileException {
+        super(bufferSize);
         this.url = url;
-        this.nativeBuffer = ByteBuffer.allocateDirect(bufferSize);
-        // we cast, because of https://github.com/eclipse/jetty.project/issues/3244
-        ((Buffer)this.nativeBuffer).limit(0);
-        this.pointer = open(url.toString(), bufferSize);
+        try {
+            this.nativeBuffer = CADirectBufferPool.getDefault().acquire(bufferSize);
+            // we cast, because of https://github.com/eclipse/jetty.project/issues/3244
+            ((Buffer)this.nativeBuffer).limit(0);
+            this.pointer = open(url.toString(), bufferSize);
+        } catch (final Throwable t) {
+            abandon();
+            throw t;
+        }
+        track(CAURLInputStream::close);
         this.seekable = isSeekable(pointer);
     }
 
@@ -70,12 +76,17 @@ public class CAURLInputStream extends CANativePeerInputStream {
     public synchronized void seek(final long time, final TimeUnit timeUnit) throws UnsupportedOperationException, IOException {
         if (!isSeekable()) throw new UnsupportedOperationException("Seeking is not supported for " + url);
         final long microseconds = timeUnit.toMicros(time);
-        if (isOpen()) {
-            seek(pointer, microseconds);
-        } else {
-            throw new IOException("Stream is already closed: " + url);
+        pausePrefetch();
+        try {
+            if (isOpen()) {
+                seek(pointer, microseconds);
+            } else {
+                throw new IOException("Stream is already closed: " + url);
+            }
+            ((Buffer)nativeBuffer).limit(0);
+        } finally {
+            resumePrefetch();
         }
-        ((Buffer)nativeBuffer).limit(0);
     }
 
     protected void fillNativeBuffer() throws IOException {
@@ -96,6 +107,6 @@ public class CAURLInputStream extends CANativePeerInputStream {
     private native void seek(final long pointer, final long microseconds) throws IOException;
     private native void fillNativeBuffer(final long audioFileID) throws IOException;
     private native long open(final String url, final int bufferSize) throws IOException;
-    protected native void close(final long audioFileID) throws IOException;
+    private static native void close(final long audioFileID) throws IOException;
 
 }
@@ -29,6 +29,14 @@ static jmethodID limitMID = NULL;
 static jmethodID fillNativeBufferMID = NULL;
 static jmethodID hasRemainingMID = NULL;
 static jmethodID positionMID = NULL;
+static jmethodID isInputPendingMID = NULL;
+
+/**
+ * Returned by the input callback, if the source has no data right now, but has not ended.
+ * Makes AudioConverterFillComplexBuffer return what it has converted so far, without
+ * treating the missing input as end of stream.
+ */
+static const OSStatus kCAInputPendingErr = 'pend';
 
 
 /**
@@ -60,8 +68,14 @@ static OSStatus CACodecInputStream_ComplexInputDataProc (
         if (res) {
             goto bail;
         }
+        // the source may have swapped in a larger buffer while filling
+        byteBuffer = acio->env->GetObjectField(acio->sourceStream, nativeBufferFID);
     }
     if (acio->env->CallBooleanMethod(byteBuffer, hasRemainingMID) == JNI_FALSE) {
+        if (acio->env->CallBooleanMethod(acio->sourceStream, isInputPendingMID) == JNI_TRUE) {
+            // no data right now - ask to be called again later instead of ending the stream
+            res = kCAInputPendingErr;
+        }
         goto bail;
     }
 
@@ -94,8 +108,9 @@ bail:
  * @param env JNI env
  * @param stream calling stream object
  * @param converterPtr pointer to the used CAAudioConverterIO struct
+ * @param maxBytes max number of bytes to convert, at least one packet is converted
  */
-JNIEXPORT void JNICALL Java_com_tagtraum_casampledsp_CACodecInputStream_fillNativeBuffer(JNIEnv *env, jobject stream, jlong converterPtr) {
+JNIEXPORT void JNICALL Java_com_tagtraum_casampledsp_CACodecInputStream_fillNativeBuffer(JNIEnv *env, jobject stream, jlong converterPtr, jint maxBytes) {
     
 #ifdef DEBUG
     fprintf(stderr, "CACodecInputStream fillNativeBuffer\n");
@@ -123,6 +138,10 @@ JNIEXPORT void JNICALL Java_com_tagtraum_casampledsp_CACodecInputStream_fillNati
         throwIOExceptionIfError(env, 1, "Failed to obtain native buffer address for this codec");
         goto bail;
     }
+    // convert less than fits, e.g. for a quick first fill, but never less than one packet
+    if (maxBytes > 0 && (UInt32)maxBytes < acio->srcBufferSize) {
+        acio->srcBufferSize = (UInt32)maxBytes < acio->srcFormat.mBytesPerPacket ? acio->srcFormat.mBytesPerPacket : (UInt32)maxBytes;
+    }
     ioOutputDataPacketSize = acio->srcBufferSize/acio->srcFormat.mBytesPerPacket;
     outOutputData.mNumberBuffers = 1;
     outOutputData.mBuffers[0].mNumberChannels = acio->srcFormat.mChannelsPerFrame;
@@ -136,6 +155,10 @@ JNIEXPORT void JNICALL Java_com_tagtraum_casampledsp_CACodecInputStream_fillNati
                                     &outOutputData,
                                     acio->pktDescs);
 
+    if (res == kCAInputPendingErr) {
+        // ioOutputDataPacketSize holds the packets converted before the source ran dry
+        res = 0;
+    }
     if (res) {
         throwUnsupportedAudioFileExceptionIfError(env, res, "Failed to fill complex audio buffer");
         goto bail;
@@ -184,6 +207,7 @@ JNIEXPORT jlong JNICALL Java_com_tagtraum_casampledsp_CACodecInputStream_open(JN
     int res = 0;
     CAAudioConverterIO *acio = new CAAudioConverterIO;
     acio->sourceStream = NULL;
+    acio->acref = NULL;
 
     jobject byteBuffer = NULL;
     jclass audioFormatClass = NULL;
@@ -199,9 +223,11 @@ JNIEXPORT jlong JNICALL Java_com_tagtraum_casampledsp_CACodecInputStream_open(JN
     jobject targetEncoding = NULL;
     
     /* get method and field ids, if we don't have them already */
-    if (fillNativeBufferMID == NULL || hasRemainingMID == NULL || positionMID == NULL || nativeBufferFID == NULL || rewindMID == NULL || limitMID == NULL) {
+    if (fillNativeBufferMID == NULL || hasRemainingMID == NULL || positionMID == NULL || nativeBufferFID == NULL || rewindMID == NULL || limitMID == NULL
+            || isInputPendingMID == NULL) {
         jclass nativePeerInputStreamClass = env->FindClass("com/tagtraum/casampledsp/CANativePeerInputStream");
         fillNativeBufferMID = env->GetMethodID(nativePeerInputStreamClass, "fillNativeBuffer", "()V");
+        isInputPendingMID = env->GetMethodID(nativePeerInputStreamClass, "isInputPending", "()Z");
         nativeBufferFID = env->GetFieldID(nativePeerInputStreamClass, "nativeBuffer", "Ljava/nio/ByteBuffer;");
         jclass bufferClass = env->FindClass("java/nio/Buffer");
         hasRemainingMID = env->GetMethodID(bufferClass, "hasRemaining", "()Z");
@@ -294,6 +320,12 @@ JNIEXPORT jlong JNICALL Java_com_tagtraum_casampledsp_CACodecInputStream_open(JN
         if (res) {
             goto bail;
         }
+        if (acio->sourceAudioIO->srcFormat.mFormatID == 0 && env->CallBooleanMethod(sourceStream, isInputPendingMID) == JNI_TRUE) {
+            // don't spin on a non-blocking source
+            res = 1;
+            throwIOExceptionIfError(env, res, "Source format is not known yet");
+            goto bail;
+        }
     }
     
     res = AudioConverterNew(&acio->sourceAudioIO->srcFormat, &acio->srcFormat, &acio->acref);
@@ -355,12 +387,13 @@ bail:
 
 /**
  * Closes the AudioConverter and cleans up other resources.
+ * May be called from any thread, as the calling stream object may already be unreachable.
  *
  * @param env JNI env
- * @param stream calling stream object
+ * @param clazz calling stream class
  * @param converterPtr pointer to CAAudioConverterIO struct
  */
-JNIEXPORT void JNICALL Java_com_tagtraum_casampledsp_CACodecInputStream_close(JNIEnv *env, jobject stream, jlong converterPtr) {
+JNIEXPORT void JNICALL Java_com_tagtraum_casampledsp_CACodecInputStream_close(JNIEnv *env, jclass clazz, jlong converterPtr) {
     if (converterPtr == 0) return;
     CAAudioConverterIO *acio = (CAAudioConverterIO*)converterPtr;
     if (acio->sourceStream != NULL) {
@@ -30,6 +30,8 @@ static jmethodID setLimitMethodID = NULL;
 static jmethodID getLimitMethodID = NULL;
 static jmethodID setPositionMethodID = NULL;
 static jmethodID getPositionMethodID = NULL;
+static jmethodID growNativeBufferMethodID = NULL;
+static jmethodID indexPacketMethodID = NULL;
 
 /**
  * Init static method and field ids for Java methods/fields, if we don't have them already.
@@ -39,9 +41,12 @@ static jmethodID getPositionMethodID = NULL;
 static void init_ids(JNIEnv *env, jobject stream) {
     // get method and field ids, if we don't have them already 
     if (nativeBufferFieldID == NULL || rewindMethodID == NULL || setLimitMethodID == NULL
-            || getLimitMethodID == NULL || getPositionMethodID==NULL || setPositionMethodID==NULL) {
+            || getLimitMethodID == NULL || getPositionMethodID==NULL || setPositionMethodID==NULL
+            || growNativeBufferMethodID == NULL || indexPacketMethodID == NULL) {
 
         nativeBufferFieldID = env->GetFieldID(env->GetObjectClass(stream), "nativeBuffer", "Ljava/nio/ByteBuffer;");
+        growNativeBufferMethodID = env->GetMethodID(env->GetObjectClass(stream), "growNativeBuffer", "(I)V");
+        indexPacketMethodID = env->GetMethodID(env->GetObjectClass(stream), "indexPacket", "(JJ)V");
         jclass bufferClass = env->FindClass("java/nio/Buffer");
         rewindMethodID = env->GetMethodID(bufferClass, "rewind", "()Ljava/nio/Buffer;");
         setLimitMethodID = env->GetMethodID(bufferClass, "limit", "(I)Ljava/nio/Buffer;");
@@ -74,6 +79,69 @@ static void CAStreamInputStream_PacketsProc (
     int oldPackets = 0;
     AudioStreamPacketDescription *newPktDescs = NULL;
     int i=0;
+    SInt64 skipPackets = 0;
+    UInt32 skipBytes = 0;
+    SInt64 batchOffset = 0;
+    SInt64 batchStart = 0;
+
+    // remember where this batch of packets starts, so that we can seek back to it.
+    // packets straddling two parse calls are delivered from the parser's own buffer,
+    // so we only know their offset, if they lie within the data we passed in
+    if (asio->chunkStart != NULL && inNumberPackets > 0
+            && (const char *)inInputData >= asio->chunkStart
+            && (const char *)inInputData < asio->chunkStart + asio->chunkLength) {
+        batchStart = (const char *)inInputData - asio->chunkStart;
+        if (inPacketDescriptions) {
+            batchStart += inPacketDescriptions[0].mStartOffset;
+        }
+        if (batchStart < asio->chunkLength) {
+            batchOffset = asio->chunkOffset + batchStart;
+            asio->env->CallVoidMethod(asio->javaInstance, indexPacketMethodID, (jlong)asio->pos, (jlong)batchOffset);
+            if (asio->env->ExceptionCheck()) {
+                goto bail;
+            }
+        }
+    }
+
+    // after seeking, drop the packets before the target packet
+    if (asio->skipUntil > asio->pos) {
+        skipPackets = asio->skipUntil - asio->pos;
+        if (skipPackets > inNumberPackets) {
+            skipPackets = inNumberPackets;
+        }
+        if (inPacketDescriptions) {
+            skipBytes = skipPackets < inNumberPackets ? (UInt32)inPacketDescriptions[skipPackets].mStartOffset : inNumberBytes;
+            inPacketDescriptions += skipPackets;
+        } else {
+            skipBytes = (UInt32)skipPackets * asio->srcFormat.mBytesPerPacket;
+            if (skipBytes > inNumberBytes) {
+                skipBytes = inNumberBytes;
+            }
+        }
+        asio->pos += skipPackets;
+        inNumberPackets -= (UInt32)skipPackets;
+        inNumberBytes -= skipBytes;
+        inInputData = (const char *)inInputData + skipBytes;
+        if (inNumberPackets == 0) {
+            goto bail;
+        }
+    }
+
+    // when scanning, count frames and packets, but don't copy anything
+    if (asio->scanOnly) {
+        if (inPacketDescriptions) {
+            for (i=0; i<(int)inNumberPackets; i++) {
+                // some formats (e.g. Vorbis) have a variable number of frames per packet
+                asio->frameCount += inPacketDescriptions[i].mVariableFramesInPacket > 0
+                    ? inPacketDescriptions[i].mVariableFramesInPacket
+                    : asio->srcFormat.mFramesPerPacket;
+            }
+        } else {
+            asio->frameCount += (SInt64)inNumberPackets * (asio->srcFormat.mFramesPerPacket > 0 ? asio->srcFormat.mFramesPerPacket : 1);
+        }
+        asio->pos += inNumberPackets;
+        goto bail;
+    }
 
     // get java-managed byte buffer reference
     byteBuffer = asio->env->GetObjectField(asio->javaInstance, nativeBufferFieldID);    
@@ -91,8 +159,18 @@ static void CAStreamInputStream_PacketsProc (
         goto bail;
     }
     if (capacity-limit < inNumberBytes) {
-        throwIOExceptionIfError(asio->env, 1, "Native buffer to small for decoded audio");
-        goto bail;
+        // swap in a larger buffer that retains the pending data
+        asio->env->CallVoidMethod(asio->javaInstance, growNativeBufferMethodID, (jint)(limit+inNumberBytes));
+        if (asio->env->ExceptionCheck()) {
+            goto bail;
+        }
+        byteBuffer = asio->env->GetObjectField(asio->javaInstance, nativeBufferFieldID);
+        asio->srcBuffer = (char *)asio->env->GetDirectBufferAddress(byteBuffer);
+        capacity = asio->env->GetDirectBufferCapacity(byteBuffer);
+        if (asio->srcBuffer == NULL || capacity-limit < inNumberBytes) {
+            throwIOExceptionIfError(asio->env, 1, "Native buffer to small for decoded audio");
+            goto bail;
+        }
     }
     // copy data to our byte buffer
     memcpy(asio->srcBuffer+limit, inInputData, inNumberBytes);
@@ -122,6 +200,8 @@ static void CAStreamInputStream_PacketsProc (
 
         // copy new packets
         memcpy(&newPktDescs[oldPackets], inPacketDescriptions, sizeof(AudioStreamPacketDescription)*inNumberPackets);
+        // offsets are relative to the data we actually copied
+        newPktDescs[oldPackets].mStartOffset -= skipBytes;
         // correct offsets
         for (i=1; i<totalPackets; i++) {
             newPktDescs[i].mStartOffset = newPktDescs[i-1].mDataByteSize+newPktDescs[i-1].mStartOffset;
@@ -195,7 +275,20 @@ static void CAStreamInputStream_PropertyListenerProc(void
         }
         */
     }
-    
+
+    if (inPropertyID == kAudioFileStreamProperty_DataOffset) {
+        SInt64 dataOffset = 0;
+        size = sizeof(dataOffset);
+        res = AudioFileStreamGetProperty(stream, kAudioFileStreamProperty_DataOffset, &size, &dataOffset);
+        if (res) {
+            throwIOExceptionIfError(asio->env, res, "Failed to read data offset from stream");
+            goto bail;
+        }
+        // the audio data starts with packet 0, even if that packet straddles two parse calls
+        // and is therefore never indexed by the packet callback
+        asio->env->CallVoidMethod(asio->javaInstance, indexPacketMethodID, (jlong)0, (jlong)dataOffset);
+    }
+
 bail:
     return;
 }
@@ -217,26 +310,231 @@ JNIEXPORT void JNICALL Java_com_tagtraum_casampledsp_CAStreamInputStream_fillNat
     
     int res = 0;
     CAAudioStreamIO *asio = (CAAudioStreamIO*)asioPtr;
-    char inBuf[length];
+    jbyte *inBuf = NULL;
 
     // update jav env
     asio->env = env;
     asio->javaInstance = stream;
     
-    // convert byte buf to native array
-    env->GetByteArrayRegion(buf, 0, length, (jbyte*)inBuf);
+    // access the byte array - not on the stack, because chunks may be large
+    // and not as critical region, because the packet callback calls back into Java
+    inBuf = env->GetByteArrayElements(buf, NULL);
+    if (inBuf == NULL) {
+        goto bail;
+    }
     
     // pump bytes into the stream reader
-    res = AudioFileStreamParseBytes(asio->asid, length, &inBuf, kAudioFileStreamPropertyFlag_CacheProperty);
+    res = AudioFileStreamParseBytes(asio->asid, length, inBuf, kAudioFileStreamPropertyFlag_CacheProperty);
     if (res) {
         throwUnsupportedAudioFileExceptionIfError(env, res, "Failed to parse bytes from audio stream");
         goto bail;
     }
     
 bail:
+    if (inBuf != NULL) {
+        // we did not modify the array, no need to copy back
+        env->ReleaseByteArrayElements(buf, inBuf, JNI_ABORT);
+    }
+    return;
+}
+
+/**
+ * Called by the Java code to fill the native buffer from a direct buffer, e.g. a memory-mapped file region.
+ * Unlike <code>fillNativeBuffer</code>, this does not copy the data.
+ *
+ * @param env JNI env
+ * @param stream stream instance
+ * @param asioPtr pointer to CAAudioStreamIO
+ * @param buf direct byte buffer with data
+ * @param offset offset of the data in the buffer
+ * @param length length of the data
+ * @param streamOffset offset of the data in the stream (in bytes) or -1, if unknown
+ */
+JNIEXPORT void JNICALL Java_com_tagtraum_casampledsp_CAStreamInputStream_fillNativeBufferDirect(JNIEnv *env, jobject stream, jlong asioPtr, jobject buf, jint offset, jint length, jlong streamOffset) {
+
+#ifdef DEBUG
+    fprintf(stderr, "fillNativeBufferDirect: %lld\n", asioPtr);
+#endif
+
+    int res = 0;
+    CAAudioStreamIO *asio = (CAAudioStreamIO*)asioPtr;
+    char *inBuf = NULL;
+    UInt32 flags = kAudioFileStreamPropertyFlag_CacheProperty;
+
+    // update jav env
+    asio->env = env;
+    asio->javaInstance = stream;
+
+    inBuf = (char *)env->GetDirectBufferAddress(buf);
+    if (inBuf == NULL) {
+        throwIOExceptionIfError(env, 1, "Failed to obtain direct buffer address");
+        goto bail;
+    }
+    if (streamOffset >= 0) {
+        asio->chunkStart = inBuf + offset;
+        asio->chunkOffset = streamOffset;
+        asio->chunkLength = (UInt32)length;
+    }
+    if (asio->discontinuity) {
+        flags |= kAudioFileStreamParseFlag_Discontinuity;
+        asio->discontinuity = false;
+    }
+
+    // pump bytes into the stream reader
+    res = AudioFileStreamParseBytes(asio->asid, length, inBuf + offset, flags);
+    if (res) {
+        throwUnsupportedAudioFileExceptionIfError(env, res, "Failed to parse bytes from audio stream");
+        goto bail;
+    }
+
+bail:
+    asio->chunkStart = NULL;
     return;
 }
 
+/**
+ * Prepares seeking to the given timestamp. Packets before the packet containing the
+ * timestamp are dropped, once parsing continues.
+ *
+ * @param env JNI env
+ * @param stream stream instance
+ * @param asioPtr pointer to CAAudioStreamIO
+ * @param microseconds timestamp
+ * @return packet containing the timestamp
+ */
+JNIEXPORT jlong JNICALL Java_com_tagtraum_casampledsp_CAStreamInputStream_seek(JNIEnv *env, jobject stream, jlong asioPtr, jlong microseconds) {
+    CAAudioStreamIO *asio = (CAAudioStreamIO*)asioPtr;
+    SInt64 frame = (SInt64)(asio->srcFormat.mSampleRate * microseconds) / 1000000LL;
+    UInt32 framesPerPacket = asio->srcFormat.mFramesPerPacket > 0 ? asio->srcFormat.mFramesPerPacket : 1;
+
+    asio->skipUntil = frame / framesPerPacket;
+    asio->frameOffset = (UInt32)(frame % framesPerPacket);
+
+#ifdef DEBUG
+    fprintf(stderr, "microseconds    : %llu\n", microseconds);
+    fprintf(stderr, "asio->skipUntil : %llu\n", asio->skipUntil);
+    fprintf(stderr, "asio->frameOffset: %i\n", asio->frameOffset);
+#endif
+
+    return (jlong)asio->skipUntil;
+}
+
+/**
+ * Tells the parser that the next data starts with the given packet and is not
+ * contiguous with the previously parsed data.
+ *
+ * @param env JNI env
+ * @param stream stream instance
+ * @param asioPtr pointer to CAAudioStreamIO
+ * @param packet packet the next data starts with
+ */
+JNIEXPORT void JNICALL Java_com_tagtraum_casampledsp_CAStreamInputStream_reposition(JNIEnv *env, jobject stream, jlong asioPtr, jlong packet) {
+    CAAudioStreamIO *asio = (CAAudioStreamIO*)asioPtr;
+    asio->pos = packet;
+    asio->lastPos = packet;
+    if (asio->pktDescs != NULL) {
+        delete[] asio->pktDescs;
+        asio->pktDescs = NULL;
+    }
+    asio->discontinuity = true;
+}
+
+/**
+ * Switches to scan mode: From now on, packets are only counted, but not copied
+ * to the native buffer, so nothing is ever decoded.
+ *
+ * @param env JNI env
+ * @param stream stream instance
+ * @param asioPtr pointer to CAAudioStreamIO
+ */
+JNIEXPORT void JNICALL Java_com_tagtraum_casampledsp_CAStreamInputStream_scanOnly(JNIEnv *env, jobject stream, jlong asioPtr) {
+    CAAudioStreamIO *asio = (CAAudioStreamIO*)asioPtr;
+    asio->scanOnly = true;
+}
+
+/**
+ * Number of packets parsed so far.
+ *
+ * @param env JNI env
+ * @param stream stream instance
+ * @param asioPtr pointer to CAAudioStreamIO
+ * @return packets
+ */
+JNIEXPORT jlong JNICALL Java_com_tagtraum_casampledsp_CAStreamInputStream_getPacketCount(JNIEnv *env, jobject stream, jlong asioPtr) {
+    CAAudioStreamIO *asio = (CAAudioStreamIO*)asioPtr;
+    return (jlong)asio->pos;
+}
+
+/**
+ * Number of frames counted while scanning. If the stream has a packet table
+ * (e.g. for gapless playback), its number of valid frames is returned instead,
+ * as it excludes priming and remainder frames.
+ *
+ * @param env JNI env
+ * @param stream stream instance
+ * @param asioPtr pointer to CAAudioStreamIO
+ * @return frames
+ */
+JNIEXPORT jlong JNICALL Java_com_tagtraum_casampledsp_CAStreamInputStream_getFrameCount(JNIEnv *env, jobject stream, jlong asioPtr) {
+    CAAudioStreamIO *asio = (CAAudioStreamIO*)asioPtr;
+    AudioFilePacketTableInfo packetTableInfo;
+    UInt32 size = sizeof(packetTableInfo);
+    int res = AudioFileStreamGetProperty(asio->asid, kAudioFileStreamProperty_PacketTableInfo, &size, &packetTableInfo);
+    if (!res && packetTableInfo.mNumberValidFrames > 0) {
+        return (jlong)packetTableInfo.mNumberValidFrames;
+    }
+    return (jlong)asio->frameCount;
+}
+
+/**
+ * Creates a Java CAAudioFormat for the audio format the parser has seen so far.
+ *
+ * @param env JNI env
+ * @param stream stream instance
+ * @param asioPtr pointer to CAAudioStreamIO
+ * @return CAAudioFormat or NULL, if the parser has not seen the format yet
+ */
+JNIEXPORT jobject JNICALL Java_com_tagtraum_casampledsp_CAStreamInputStream_getSourceFormat(JNIEnv *env, jobject stream, jlong asioPtr) {
+    CAAudioStreamIO *asio = (CAAudioStreamIO*)asioPtr;
+    AudioStreamBasicDescription format = asio->srcFormat;
+    jclass audioFormatClass = NULL;
+    jmethodID cid = NULL;
+    jobject result = NULL;
+    jint bitRate = -1;
+    jboolean vbr = JNI_TRUE;
+    jboolean bigEndian = JNI_FALSE;
+    const Float64 bitsPerByte = 8.;
+
+    if (format.mFormatID == 0) return NULL;
+
+    if (format.mBytesPerPacket && format.mFramesPerPacket) {
+        bitRate = (jint)(bitsPerByte * (Float64)format.mBytesPerPacket * format.mSampleRate / (Float64)format.mFramesPerPacket);
+        vbr = JNI_FALSE;
+    }
+    if (format.mFormatID == kAudioFormatLinearPCM && (kAudioFormatFlagIsBigEndian & format.mFormatFlags) == kAudioFormatFlagIsBigEndian) {
+        bigEndian = JNI_TRUE;
+    }
+
+    audioFormatClass = env->FindClass("com/tagtraum/casampledsp/CAAudioFormat");
+    if (audioFormatClass == NULL) {
+        return NULL; // exception thrown
+    }
+    cid = env->GetMethodID(audioFormatClass, "<init>", "(IFIIIFZIZ)V");
+    if (cid != NULL) {
+        // AudioSystem.NOT_SPECIFIED (i.e. -1) for values the format does not have
+        result = env->NewObject(audioFormatClass, cid,
+                                (jint)format.mFormatID,
+                                (jfloat)format.mSampleRate,
+                                format.mBitsPerChannel > 0 ? (jint)format.mBitsPerChannel : -1,
+                                format.mChannelsPerFrame > 0 ? (jint)format.mChannelsPerFrame : -1,
+                                format.mBytesPerFrame > 0 ? (jint)format.mBytesPerFrame : -1,
+                                (jfloat)(format.mSampleRate / (format.mFramesPerPacket > 0 ? format.mFramesPerPacket : 1)),
+                                bigEndian, bitRate, vbr);
+    }
+    env->DeleteLocalRef(audioFormatClass);
+    return result;
+}
+
 /**
  * Opens the audio stream - at this point only the callbacks are set up via AudioFileStreamOpen.
  *
@@ -263,6 +561,13 @@ JNIEXPORT jlong JNICALL Java_com_tagtraum_casampledsp_CAStreamInputStream_open
     asio->cookie = NULL;
     asio->cookieSize = 0;
     asio->frameOffset = 0;
+    asio->chunkStart = NULL;
+    asio->chunkOffset = 0;
+    asio->chunkLength = 0;
+    asio->skipUntil = 0;
+    asio->discontinuity = false;
+    asio->scanOnly = false;
+    asio->frameCount = 0;
 
     res = AudioFileStreamOpen(asio, CAStreamInputStream_PropertyListenerProc, CAStreamInputStream_PacketsProc, hint, &asio->asid);
     if (res) {
@@ -289,13 +594,14 @@ bail:
 
 /**
  * Closes the stream and all associated resources.
+ * May be called from any thread, as the calling stream object may already be unreachable.
  *
  * @param env JNI env
- * @param stream calling stream instance
+ * @param clazz calling stream class
  * @param asioPtr pointer to CAAudioStreamIO
  */
 JNIEXPORT void JNICALL Java_com_tagtraum_casampledsp_CAStreamInputStream_close
-        (JNIEnv *env, jobject stream, jlong asioPtr) {
+        (JNIEnv *env, jclass clazz, jlong asioPtr) {
     if (asioPtr == 0) return;
     CAAudioStreamIO *asio = (CAAudioStreamIO*)asioPtr;
     if (asio->cookie != NULL) {
@@ -278,12 +278,13 @@ JNIEXPORT void JNICALL Java_com_tagtraum_casampledsp_CAURLInputStream_seek(JNIEn
 
 /**
  * Closes this resource and frees all associated resources.
+ * May be called from any thread, as the calling stream object may already be unreachable.
  *
  * @param env JNI env
- * @param stream calling Java stream
+ * @param clazz calling Java stream class
  * @param afioPtr pointer to CAAudioFileIO
  */
-JNIEXPORT void JNICALL Java_com_tagtraum_casampledsp_CAURLInputStream_close(JNIEnv *env, jobject stream, jlong afioPtr) {
+JNIEXPORT void JNICALL Java_com_tagtraum_casampledsp_CAURLInputStream_close(JNIEnv *env, jclass clazz, jlong afioPtr) {
 
 #ifdef DEBUG
     fprintf(stderr, "Closing: %llu\n", afioPtr);
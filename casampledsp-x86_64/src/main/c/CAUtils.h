@@ -84,7 +84,14 @@ struct CAAudioFileIO:CAAudioIO
  */
 struct CAAudioStreamIO:CAAudioIO
 {
-	AudioFileStreamID   asid;       ///< Stream id
+	AudioFileStreamID   asid;           ///< Stream id
+	const char *        chunkStart;     ///< Start of the data currently parsed, if its stream offset is known
+	SInt64              chunkOffset;    ///< Stream offset (in bytes) of chunkStart
+	UInt32              chunkLength;    ///< Length (in bytes) of the data starting at chunkStart
+	SInt64              skipUntil;      ///< Packets before this one are dropped (after seeking)
+	bool                discontinuity;  ///< Next data is not contiguous with the previous data (after seeking)
+	bool                scanOnly;       ///< Packets are only counted, not copied to the native buffer
+	SInt64              frameCount;     ///< Number of frames counted while scanning
 };
 
 void throwUnsupportedAudioFileExceptionIfError(JNIEnv *, int, const char*);